@@ -0,0 +1,86 @@
+package com.vitrina.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+// Resource counters one stage accumulates while handling a request. The orchestration record
+// keeps them under resources.<stage>: "push" is written with the record, and each routed service
+// and the merge add theirs to the empty maps created next to it, so the status endpoint shows
+// what each request cost end to end.
+public final class ResourceUsage {
+  public static final String ATTRIBUTE = "resources";
+  public static final String PUSH_STAGE = "push";
+  public static final String MERGE_STAGE = "merge";
+  public static final String S3_BYTES_WRITTEN = "s3BytesWritten";
+  public static final String S3_BYTES_READ = "s3BytesRead";
+  public static final String DYNAMODB_READS = "dynamoDbReads";
+  public static final String DYNAMODB_WRITES = "dynamoDbWrites";
+  public static final String SQS_SENDS = "sqsSends";
+  public static final String SQS_RECEIVES = "sqsReceives";
+  public static final String REDELIVERIES = "redeliveries";
+  public static final String CPU_MICROS = "cpuMicros";
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final Map<String, Long> counters = new TreeMap<>();
+  private final long cpuStartNanos = threadCpuNanos();
+
+  public void add(String counter, long amount) {
+    if (amount > 0) {
+      counters.merge(counter, amount, Long::sum);
+    }
+  }
+
+  // CPU time of the calling thread since this object was created, so both must happen on the
+  // thread that handled the request.
+  public void stopCpuClock() {
+    long cpuNanos = threadCpuNanos();
+    if (cpuStartNanos >= 0 && cpuNanos >= 0) {
+      add(CPU_MICROS, (cpuNanos - cpuStartNanos) / 1000);
+    }
+  }
+
+  public Map<String, Long> getCounters() {
+    return counters;
+  }
+
+  // Increments rather than overwrites, so redeliveries and shards of the same service add up.
+  // The record's resources.<stage> map must already exist; the push path creates one per stage.
+  public UpdateItemRequest toUpdateRequest(String tableName, String requestId, String stage) {
+    Map<String, String> attributeNames = new LinkedHashMap<>();
+    attributeNames.put("#resources", ATTRIBUTE);
+    attributeNames.put("#stage", stage);
+    Map<String, AttributeValue> attributeValues = new LinkedHashMap<>();
+    attributeValues.put(":zero", AttributeValue.builder().n("0").build());
+    StringBuilder updateExpression = new StringBuilder("SET ");
+    int index = 0;
+    for (Map.Entry<String, Long> entry : counters.entrySet()) {
+      String path = "#resources.#stage.#c" + index;
+      attributeNames.put("#c" + index, entry.getKey());
+      attributeValues.put(":v" + index, AttributeValue.builder()
+          .n(Long.toString(entry.getValue()))
+          .build());
+      if (index > 0) {
+        updateExpression.append(", ");
+      }
+      updateExpression.append(path).append(" = if_not_exists(").append(path)
+          .append(", :zero) + :v").append(index);
+      index++;
+    }
+    return UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .updateExpression(updateExpression.toString())
+        .expressionAttributeNames(attributeNames)
+        .expressionAttributeValues(attributeValues)
+        .build();
+  }
+
+  private static long threadCpuNanos() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+  }
+}
@@ -0,0 +1,89 @@
+package com.vitrina.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Appends each finished span as one OTLP/JSON ExportTraceServiceRequest line, the format the
+// OpenTelemetry Collector's otlpjsonfile receiver reads, so traces can be collected offline
+// or replayed into any OTLP backend later. An empty path turns export off.
+public class SpanExporter {
+  private static final Logger logger = LoggerFactory.getLogger(SpanExporter.class);
+  private static final String SCOPE_NAME = "vitrina";
+
+  private final ObjectMapper objectMapper;
+  private final Path file;
+  private final String serviceName;
+
+  public SpanExporter(ObjectMapper objectMapper, String otlpFile, String serviceName) {
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.file = otlpFile == null || otlpFile.isBlank() ? null : Path.of(otlpFile.trim());
+    this.serviceName = serviceName;
+  }
+
+  public void export(String name,
+      TraceContext span,
+      String parentSpanId,
+      long startMillis,
+      long endMillis,
+      Map<String, Object> attributes) {
+    if (file == null) {
+      return;
+    }
+    Map<String, Object> otlpSpan = new LinkedHashMap<>();
+    otlpSpan.put("traceId", span.getTraceId());
+    otlpSpan.put("spanId", span.getSpanId());
+    if (parentSpanId != null) {
+      otlpSpan.put("parentSpanId", parentSpanId);
+    }
+    otlpSpan.put("name", name);
+    otlpSpan.put("startTimeUnixNano", Long.toString(startMillis * 1_000_000));
+    otlpSpan.put("endTimeUnixNano", Long.toString(endMillis * 1_000_000));
+    otlpSpan.put("attributes", toKeyValues(attributes));
+
+    Map<String, Object> request = Map.of("resourceSpans", List.of(Map.of(
+        "resource", Map.of("attributes", toKeyValues(Map.of("service.name", serviceName))),
+        "scopeSpans", List.of(Map.of(
+            "scope", Map.of("name", SCOPE_NAME),
+            "spans", List.of(otlpSpan))))));
+    try {
+      byte[] line = (objectMapper.writeValueAsString(request) + "\n")
+          .getBytes(StandardCharsets.UTF_8);
+      synchronized (this) {
+        Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+    } catch (Exception ex) {
+      logger.warn("Failed to export span. name={}, traceId={}", name, span.getTraceId(), ex);
+    }
+  }
+
+  private List<Map<String, Object>> toKeyValues(Map<String, ?> attributes) {
+    List<Map<String, Object>> keyValues = new ArrayList<>();
+    for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+      Object value = entry.getValue();
+      Map<String, Object> anyValue;
+      if (value == null) {
+        continue;
+      } else if (value instanceof Boolean bool) {
+        anyValue = Map.of("boolValue", bool);
+      } else if (value instanceof Integer || value instanceof Long) {
+        anyValue = Map.of("intValue", value.toString());
+      } else if (value instanceof Number number) {
+        anyValue = Map.of("doubleValue", number.doubleValue());
+      } else {
+        anyValue = Map.of("stringValue", value.toString());
+      }
+      keyValues.add(Map.of("key", entry.getKey(), "value", anyValue));
+    }
+    return keyValues;
+  }
+}
@@ -0,0 +1,66 @@
+package com.vitrina.common;
+
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+// W3C trace context passed between pipeline stages in the traceparent SQS message attribute.
+// Each stage starts a child span of the context it received.
+public final class TraceContext {
+  public static final String MESSAGE_ATTRIBUTE = "traceparent";
+  private static final Pattern TRACEPARENT =
+      Pattern.compile("^00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$");
+  private static final String INVALID_TRACE_ID = "0".repeat(32);
+  private static final String INVALID_SPAN_ID = "0".repeat(16);
+
+  private final String traceId;
+  private final String spanId;
+
+  private TraceContext(String traceId, String spanId) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+  }
+
+  public static TraceContext newTrace() {
+    return new TraceContext(randomHex(16, INVALID_TRACE_ID), randomHex(8, INVALID_SPAN_ID));
+  }
+
+  // Returns null for a missing or malformed header, so the caller starts a new trace.
+  public static TraceContext parse(String traceparent) {
+    if (traceparent == null) {
+      return null;
+    }
+    var matcher = TRACEPARENT.matcher(traceparent.trim());
+    if (!matcher.matches() || matcher.group(1).equals(INVALID_TRACE_ID)
+        || matcher.group(2).equals(INVALID_SPAN_ID)) {
+      return null;
+    }
+    return new TraceContext(matcher.group(1), matcher.group(2));
+  }
+
+  public TraceContext newSpan() {
+    return new TraceContext(traceId, randomHex(8, INVALID_SPAN_ID));
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  public String toTraceparent() {
+    return "00-" + traceId + "-" + spanId + "-01";
+  }
+
+  private static String randomHex(int bytes, String invalid) {
+    byte[] value = new byte[bytes];
+    String hex;
+    do {
+      ThreadLocalRandom.current().nextBytes(value);
+      hex = HexFormat.of().formatHex(value);
+    } while (hex.equals(invalid));
+    return hex;
+  }
+}
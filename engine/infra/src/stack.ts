@@ -8,6 +8,7 @@ import * as lambda from 'aws-cdk-lib/aws-lambda';
 import * as logs from 'aws-cdk-lib/aws-logs';
 import * as s3 from 'aws-cdk-lib/aws-s3';
 import * as s3deploy from 'aws-cdk-lib/aws-s3-deployment';
+import * as secretsmanager from 'aws-cdk-lib/aws-secretsmanager';
 import * as sqs from 'aws-cdk-lib/aws-sqs';
 import * as dynamodb from 'aws-cdk-lib/aws-dynamodb';
 import * as apigateway from 'aws-cdk-lib/aws-apigateway';
@@ -37,6 +38,8 @@ const resourceNames = (stack: Stack) => {
     mergeDlq: `${NAME_PREFIX}-Merge-DLQ`,
     mergeQueue: `${NAME_PREFIX}-Merge-Queue`,
     statusTable: `${NAME_PREFIX}-OrchestrationStatus`,
+    idempotencyTable: `${NAME_PREFIX}-IdempotencyKeys`,
+    callbackSigningSecret: `${NAME_PREFIX}-CallbackSigningSecret`,
     lambdaRole: `${NAME_PREFIX}-Lambda-Role`,
     lambdaFunction: `${NAME_PREFIX}-PushToSqs`,
     orchestrationApi: `${NAME_PREFIX}-OrchestrationApi`,
@@ -169,6 +172,62 @@ export class VitrinaInfraStack extends Stack {
       removalPolicy: RemovalPolicy.RETAIN,
     });
 
+    // CloudFormation creates at most one GSI per table update, so an existing table gets these
+    // one deploy at a time: -c statusTableIndexStage=1, then 2, then the default 3 (RUNBOOK.md).
+    const statusTableIndexStage = Number(this.node.tryGetContext('statusTableIndexStage') ?? 3);
+
+    // Sparse index: only records in MERGING carry the lease attributes the merge sweeper scans.
+    if (statusTableIndexStage >= 1) {
+      statusTable.addGlobalSecondaryIndex({
+        indexName: 'MergeLeaseIndex',
+        partitionKey: { name: 'mergeLeasePartition', type: dynamodb.AttributeType.STRING },
+        sortKey: { name: 'mergeLeaseExpiresAt', type: dynamodb.AttributeType.NUMBER },
+        projectionType: dynamodb.ProjectionType.KEYS_ONLY,
+      });
+    }
+
+    // Request IDs are ULIDs, so each shard lists records newest first without a table scan.
+    if (statusTableIndexStage >= 2) {
+      statusTable.addGlobalSecondaryIndex({
+        indexName: 'RecentRequestsIndex',
+        partitionKey: { name: 'listShard', type: dynamodb.AttributeType.STRING },
+        sortKey: { name: 'requestId', type: dynamodb.AttributeType.STRING },
+        projectionType: dynamodb.ProjectionType.INCLUDE,
+        nonKeyAttributes: ['finalStatus', 'mergedKey', 'createdAt'],
+      });
+    }
+
+    // Sparse on mergedAt: only merged records are candidates for reuse by identical payloads.
+    // summary is projected so a reused record can carry it without reading the original.
+    if (statusTableIndexStage >= 3) {
+      statusTable.addGlobalSecondaryIndex({
+        indexName: 'PayloadHashIndex',
+        partitionKey: { name: 'payloadHash', type: dynamodb.AttributeType.STRING },
+        sortKey: { name: 'mergedAt', type: dynamodb.AttributeType.STRING },
+        projectionType: dynamodb.ProjectionType.INCLUDE,
+        nonKeyAttributes: ['mergedKey', 'summary'],
+      });
+    }
+
+    // Idempotency-Key -> requestId for /scan retries; TTL drops keys after the retry window.
+    const idempotencyTable = new dynamodb.Table(this, 'IdempotencyKeyTable', {
+      tableName: names.idempotencyTable,
+      partitionKey: { name: 'idempotencyKey', type: dynamodb.AttributeType.STRING },
+      billingMode: dynamodb.BillingMode.PAY_PER_REQUEST,
+      timeToLiveAttribute: 'expiresAt',
+      removalPolicy: RemovalPolicy.RETAIN,
+    });
+
+    // Shared HMAC key for completion callbacks; integrators fetch it to verify signatures.
+    const callbackSigningSecret = new secretsmanager.Secret(this, 'CallbackSigningSecret', {
+      secretName: names.callbackSigningSecret,
+      generateSecretString: {
+        passwordLength: 48,
+        excludePunctuation: true,
+      },
+      removalPolicy: RemovalPolicy.RETAIN,
+    });
+
     const lambdaRole = new iam.Role(this, 'LambdaExecutionRole', {
       roleName: names.lambdaRole,
       assumedBy: new iam.ServicePrincipal('lambda.amazonaws.com'),
@@ -194,7 +253,15 @@ export class VitrinaInfraStack extends Stack {
         SQS_QUEUE_URL_A: serviceAQueue.queueUrl,
         SQS_QUEUE_URL_B: serviceBQueue.queueUrl,
         STATUS_TABLE_NAME: statusTable.tableName,
+        IDEMPOTENCY_TABLE_NAME: idempotencyTable.tableName,
         ORCHESTRATED_BUCKET_NAME: orchestratedDetectionBucket.bucketName,
+        // Lets /findings?partial=true serve finished service outputs before the merge.
+        SERVICE_BUCKETS: [
+          `serviceA=${serviceAPayloadBucket.bucketName}`,
+          `serviceB=${serviceBPayloadBucket.bucketName}`,
+        ].join(','),
+        // Reuse queries PayloadHashIndex, so it stays off until that index exists.
+        ...(statusTableIndexStage < 3 ? { RESULT_REUSE_MAX_AGE_MINUTES: '0' } : {}),
       },
     });
 
@@ -205,10 +272,20 @@ export class VitrinaInfraStack extends Stack {
     serviceAQueue.grantSendMessages(fn);
     serviceBQueue.grantSendMessages(fn);
     statusTable.grantReadWriteData(fn);
+    idempotencyTable.grantReadWriteData(fn);
     orchestratedDetectionBucket.grantRead(fn);
+    serviceAPayloadBucket.grantRead(fn);
+    serviceBPayloadBucket.grantRead(fn);
+    // Admission control reads ApproximateAgeOfOldestMessage; GetMetricData has no resource scope.
+    fn.addToRolePolicy(new iam.PolicyStatement({
+      actions: ['cloudwatch:GetMetricData'],
+      resources: ['*'],
+    }));
 
     const api = new apigateway.RestApi(this, 'OrchestrationApi', {
       restApiName: names.orchestrationApi,
+      // Lets API Gateway decode the base64 bodies the Lambda returns for compressed responses.
+      binaryMediaTypes: ['*/*'],
       deployOptions: {
         stageName: 'prod',
       },
@@ -221,11 +298,15 @@ export class VitrinaInfraStack extends Stack {
     const statusResource = api.root.addResource('status');
     statusResource.addMethod('GET', lambdaIntegration);
     statusResource.addResource('{requestId}').addMethod('GET', lambdaIntegration);
+    statusResource.addResource('batch').addMethod('POST', lambdaIntegration);
 
     const findingsResource = api.root.addResource('findings');
     findingsResource.addMethod('GET', lambdaIntegration);
     findingsResource.addResource('{requestId}').addMethod('GET', lambdaIntegration);
 
+    const orchestrationsResource = api.root.addResource('orchestrations');
+    orchestrationsResource.addMethod('GET', lambdaIntegration);
+
     const vpc = new ec2.Vpc(this, 'ServiceVpc', {
       vpcName: names.vpc,
       maxAzs: 2,
@@ -293,6 +374,7 @@ export class VitrinaInfraStack extends Stack {
     mergeQueue.grantSendMessages(serviceATaskRole);
     mergeQueue.grantSendMessages(serviceBTaskRole);
     mergeQueue.grantConsumeMessages(mergeTaskRole);
+    mergeQueue.grantSendMessages(mergeTaskRole);
     serviceAPayloadBucket.grantPut(serviceATaskRole);
     serviceBPayloadBucket.grantPut(serviceBTaskRole);
     serviceAPayloadBucket.grantRead(mergeTaskRole);
@@ -350,6 +432,7 @@ export class VitrinaInfraStack extends Stack {
         STATUS_TABLE_NAME: statusTable.tableName,
         MERGE_QUEUE_URL: mergeQueue.queueUrl,
         EXPECTED_SERVICES: 'serviceA,serviceB',
+        // Shipped in the image from rules/pattern-rules.txt.
       },
     });
 
@@ -366,6 +449,7 @@ export class VitrinaInfraStack extends Stack {
         STATUS_TABLE_NAME: statusTable.tableName,
         MERGE_QUEUE_URL: mergeQueue.queueUrl,
         EXPECTED_SERVICES: 'serviceA,serviceB',
+        // Shipped in the image from rules/pattern-rules.txt.
       },
     });
 
@@ -377,10 +461,18 @@ export class VitrinaInfraStack extends Stack {
       }),
       environment: {
         SQS_QUEUE_URL: mergeQueue.queueUrl,
-        SERVICE_A_BUCKET_NAME: serviceAPayloadBucket.bucketName,
-        SERVICE_B_BUCKET_NAME: serviceBPayloadBucket.bucketName,
+        // service=bucket pairs; the merge reads whichever outputs the status record lists.
+        SERVICE_BUCKETS: [
+          `serviceA=${serviceAPayloadBucket.bucketName}`,
+          `serviceB=${serviceBPayloadBucket.bucketName}`,
+        ].join(','),
         ORCHESTRATED_BUCKET_NAME: orchestratedDetectionBucket.bucketName,
         STATUS_TABLE_NAME: statusTable.tableName,
+        // Part buffers for all concurrent merges; keep well under the task's 75% heap.
+        MERGE_BUFFER_POOL_BYTES: String(96 * 1024 * 1024),
+      },
+      secrets: {
+        CALLBACK_SIGNING_SECRET: ecs.Secret.fromSecretsManager(callbackSigningSecret),
       },
     });
 
@@ -431,6 +523,8 @@ export class VitrinaInfraStack extends Stack {
     new CfnOutput(this, 'MergeServiceName', { value: mergeService.serviceName });
     new CfnOutput(this, 'MergeQueueUrl', { value: mergeQueue.queueUrl });
     new CfnOutput(this, 'StatusTableName', { value: statusTable.tableName });
+    new CfnOutput(this, 'IdempotencyTableName', { value: idempotencyTable.tableName });
+    new CfnOutput(this, 'CallbackSigningSecretName', { value: callbackSigningSecret.secretName });
     new CfnOutput(this, 'OrchestrationApiUrl', { value: api.url });
   }
 }
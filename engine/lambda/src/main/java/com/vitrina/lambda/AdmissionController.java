@@ -0,0 +1,5 @@
+package com.vitrina.lambda;
+
+public interface AdmissionController {
+  void admit();
+}
@@ -0,0 +1,104 @@
+package com.vitrina.lambda;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+public class DynamoDbIdempotencyStore implements IdempotencyStore {
+  private final DynamoDbClient dynamoDbClient;
+  private final String tableName;
+  private final Duration ttl;
+  private final Clock clock;
+
+  public DynamoDbIdempotencyStore(DynamoDbClient dynamoDbClient,
+      String tableName,
+      Duration ttl,
+      Clock clock) {
+    this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
+    if (tableName == null || tableName.isBlank()) {
+      throw new IllegalStateException("Idempotency table name is required");
+    }
+    this.tableName = tableName;
+    this.ttl = Objects.requireNonNull(ttl, "ttl");
+    this.clock = Objects.requireNonNull(clock, "clock");
+  }
+
+  @Override
+  public String find(String idempotencyKey, String requestHash) {
+    Map<String, AttributeValue> item = read(idempotencyKey);
+    if (item == null || item.isEmpty()
+        || Long.parseLong(item.get("expiresAt").n()) < clock.instant().getEpochSecond()) {
+      return null;
+    }
+    if (!requestHash.equals(item.get("requestHash").s())) {
+      throw new IdempotencyKeyConflictException("Idempotency-Key reuse with different payload");
+    }
+    return item.get("requestId").s();
+  }
+
+  @Override
+  public String claim(String idempotencyKey, String requestHash, String requestId) {
+    long nowSeconds = clock.instant().getEpochSecond();
+    try {
+      // TTL deletion lags expiry, so an expired key is treated as free.
+      dynamoDbClient.putItem(PutItemRequest.builder()
+          .tableName(tableName)
+          .item(Map.of(
+              "idempotencyKey", AttributeValue.builder().s(idempotencyKey).build(),
+              "requestHash", AttributeValue.builder().s(requestHash).build(),
+              "requestId", AttributeValue.builder().s(requestId).build(),
+              "expiresAt", number(nowSeconds + ttl.toSeconds())))
+          .conditionExpression("attribute_not_exists(idempotencyKey) OR expiresAt < :now")
+          .expressionAttributeValues(Map.of(":now", number(nowSeconds)))
+          .build());
+      return requestId;
+    } catch (ConditionalCheckFailedException ex) {
+      Map<String, AttributeValue> item = read(idempotencyKey);
+      if (item == null || item.isEmpty()) {
+        // Released between our put and read; the client can simply retry.
+        throw new IdempotencyKeyConflictException(
+            "Request with this Idempotency-Key is in progress");
+      }
+      if (!requestHash.equals(item.get("requestHash").s())) {
+        throw new IdempotencyKeyConflictException("Idempotency-Key reuse with different payload");
+      }
+      return item.get("requestId").s();
+    }
+  }
+
+  @Override
+  public void release(String idempotencyKey, String requestId) {
+    try {
+      dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+          .tableName(tableName)
+          .key(Map.of("idempotencyKey", AttributeValue.builder().s(idempotencyKey).build()))
+          .conditionExpression("requestId = :requestId")
+          .expressionAttributeValues(Map.of(
+              ":requestId", AttributeValue.builder().s(requestId).build()))
+          .build());
+    } catch (ConditionalCheckFailedException ex) {
+      // Another request owns the key now; leave it alone.
+    }
+  }
+
+  private Map<String, AttributeValue> read(String idempotencyKey) {
+    GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("idempotencyKey", AttributeValue.builder().s(idempotencyKey).build()))
+        .consistentRead(true)
+        .build());
+    return response.item();
+  }
+
+  private static AttributeValue number(long value) {
+    return AttributeValue.builder().n(Long.toString(value)).build();
+  }
+}
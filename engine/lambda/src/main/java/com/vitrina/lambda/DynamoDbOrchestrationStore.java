@@ -1,37 +1,181 @@
 package com.vitrina.lambda;
 
+import com.vitrina.common.ResourceUsage;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
 public class DynamoDbOrchestrationStore implements OrchestrationStore {
+  public static final String PAYLOAD_HASH_INDEX = "PayloadHashIndex";
+  public static final String PAYLOAD_HASH_ATTRIBUTE = "payloadHash";
+  public static final String SHARD_COUNT_ATTRIBUTE = "shardCount";
+  public static final String SHARD_OUTPUTS_ATTRIBUTE = "shardOutputs";
+
   private final DynamoDbClient dynamoDbClient;
   private final String tableName;
+  private final int listShards;
+  private final Duration resultReuseMaxAge;
+  private final Clock clock;
 
-  public DynamoDbOrchestrationStore(DynamoDbClient dynamoDbClient, String tableName) {
+  public DynamoDbOrchestrationStore(DynamoDbClient dynamoDbClient,
+      String tableName,
+      int listShards,
+      Duration resultReuseMaxAge,
+      Clock clock) {
     this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
     if (tableName == null || tableName.isBlank()) {
       throw new IllegalStateException("DynamoDB table name is required");
     }
+    if (listShards < 1) {
+      throw new IllegalStateException("Listing shard count must be positive");
+    }
     this.tableName = tableName;
+    this.listShards = listShards;
+    this.resultReuseMaxAge = Objects.requireNonNull(resultReuseMaxAge, "resultReuseMaxAge");
+    this.clock = Objects.requireNonNull(clock, "clock");
   }
 
   @Override
-  public void recordStart(String requestId, Map<String, String> serviceStatuses) {
+  public void recordStart(String requestId,
+      Map<String, String> serviceStatuses,
+      Map<String, String> attributes,
+      ResourceUsage usage) {
     Map<String, AttributeValue> engineMap = new HashMap<>();
     for (Map.Entry<String, String> entry : serviceStatuses.entrySet()) {
       engineMap.put(entry.getKey(), AttributeValue.builder().s(entry.getValue()).build());
     }
+    Map<String, AttributeValue> item = newRecord(requestId, engineMap, "PENDING", attributes);
+    item.put(ResourceUsage.ATTRIBUTE, resources(usage, serviceStatuses.keySet()));
+    put(item);
+  }
+
+  @Override
+  public void recordFailure(String requestId, String reason) {
+    try {
+      dynamoDbClient.updateItem(UpdateItemRequest.builder()
+          .tableName(tableName)
+          .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+          .updateExpression("SET #finalStatus = :failed, #failureReason = :reason")
+          .conditionExpression("#finalStatus = :pending")
+          .expressionAttributeNames(Map.of(
+              "#finalStatus", "finalStatus",
+              "#failureReason", "failureReason"))
+          .expressionAttributeValues(Map.of(
+              ":failed", AttributeValue.builder().s("FAILED").build(),
+              ":pending", AttributeValue.builder().s("PENDING").build(),
+              ":reason", AttributeValue.builder().s(reason).build()))
+          .build());
+    } catch (ConditionalCheckFailedException ex) {
+      // Already past PENDING; the workers own the status from here.
+    }
+  }
+
+  // The index only holds records that carry both a payload hash and mergedAt, which the merge
+  // sets when it marks a record DONE; the newest one inside the reuse window wins. It projects
+  // mergedKey and summary, so a reused record gets both without reading the original.
+  @Override
+  public ReusableResult findReusableResult(String payloadHash) {
+    if (resultReuseMaxAge.isZero() || payloadHash == null) {
+      return null;
+    }
+    QueryResponse response = dynamoDbClient.query(QueryRequest.builder()
+        .tableName(tableName)
+        .indexName(PAYLOAD_HASH_INDEX)
+        .keyConditionExpression("#payloadHash = :payloadHash AND #mergedAt >= :cutoff")
+        .expressionAttributeNames(Map.of(
+            "#payloadHash", PAYLOAD_HASH_ATTRIBUTE,
+            "#mergedAt", "mergedAt"))
+        .expressionAttributeValues(Map.of(
+            ":payloadHash", AttributeValue.builder().s(payloadHash).build(),
+            ":cutoff", AttributeValue.builder()
+                .s(clock.instant().minus(resultReuseMaxAge).toString())
+                .build()))
+        .scanIndexForward(false)
+        .limit(1)
+        .build());
+    for (Map<String, AttributeValue> item : response.items()) {
+      AttributeValue mergedKey = item.get("mergedKey");
+      if (mergedKey != null && mergedKey.s() != null) {
+        return new ReusableResult(item.get("requestId").s(), mergedKey.s(), item.get("summary"));
+      }
+    }
+    return null;
+  }
 
+  // Reused records have no mergedAt, so they never enter the index and a result cannot be
+  // kept alive past its window by being reused.
+  @Override
+  public void recordReuse(String requestId,
+      ReusableResult result,
+      Map<String, String> attributes,
+      ResourceUsage usage) {
+    Map<String, AttributeValue> item = newRecord(requestId, Map.of(), "DONE", attributes);
+    item.put(ResourceUsage.ATTRIBUTE, resources(usage, Set.of()));
+    item.put("mergedKey", AttributeValue.builder().s(result.getMergedKey()).build());
+    item.put("reusedFrom", AttributeValue.builder().s(result.getRequestId()).build());
+    if (result.getSummary() != null) {
+      item.put("summary", result.getSummary());
+    }
+    put(item);
+  }
+
+  private Map<String, AttributeValue> newRecord(String requestId,
+      Map<String, AttributeValue> engineMap,
+      String finalStatus,
+      Map<String, String> attributes) {
     Map<String, AttributeValue> item = new HashMap<>();
     item.put("requestId", AttributeValue.builder().s(requestId).build());
     item.put("engine", AttributeValue.builder().m(engineMap).build());
     item.put("outputs", AttributeValue.builder().m(Map.of()).build());
-    item.put("finalStatus", AttributeValue.builder().s("PENDING").build());
+    item.put("finalStatus", AttributeValue.builder().s(finalStatus).build());
+    item.put("createdAt", AttributeValue.builder().s(clock.instant().toString()).build());
+    item.put(OrchestrationLister.LIST_SHARD_ATTRIBUTE, AttributeValue.builder()
+        .s(OrchestrationLister.shardFor(requestId, listShards))
+        .build());
+    // Workers add "<service>/<shard>" output keys to the empty map; the merge waits for all.
+    String shardCount = attributes.get(SHARD_COUNT_ATTRIBUTE);
+    if (shardCount != null && !engineMap.isEmpty()) {
+      item.put(SHARD_COUNT_ATTRIBUTE, AttributeValue.builder().n(shardCount).build());
+      item.put(SHARD_OUTPUTS_ATTRIBUTE, AttributeValue.builder().m(Map.of()).build());
+    }
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      if (entry.getValue() != null && !entry.getValue().isBlank()
+          && !entry.getKey().equals(SHARD_COUNT_ATTRIBUTE)) {
+        item.putIfAbsent(entry.getKey(), AttributeValue.builder().s(entry.getValue()).build());
+      }
+    }
+    return item;
+  }
+
+  // Workers and the merge increment counters inside their own stage map, which DynamoDB can only
+  // do once the map exists.
+  private AttributeValue resources(ResourceUsage usage, Set<String> services) {
+    Map<String, AttributeValue> push = new HashMap<>();
+    for (Map.Entry<String, Long> entry : usage.getCounters().entrySet()) {
+      push.put(entry.getKey(), AttributeValue.builder().n(entry.getValue().toString()).build());
+    }
+    Map<String, AttributeValue> stages = new HashMap<>();
+    stages.put(ResourceUsage.PUSH_STAGE, AttributeValue.builder().m(push).build());
+    if (!services.isEmpty()) {
+      stages.put(ResourceUsage.MERGE_STAGE, AttributeValue.builder().m(Map.of()).build());
+    }
+    for (String service : services) {
+      stages.put(service, AttributeValue.builder().m(Map.of()).build());
+    }
+    return AttributeValue.builder().m(stages).build();
+  }
 
+  private void put(Map<String, AttributeValue> item) {
     dynamoDbClient.putItem(PutItemRequest.builder()
         .tableName(tableName)
         .item(item)
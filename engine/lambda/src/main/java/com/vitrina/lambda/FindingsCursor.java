@@ -0,0 +1,63 @@
+package com.vitrina.lambda;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Pins the object key and ETag so a page sequence never spans two versions of the document.
+public class FindingsCursor {
+  private final String objectKey;
+  private final String eTag;
+  private final int offset;
+
+  public FindingsCursor(String objectKey, String eTag, int offset) {
+    this.objectKey = objectKey;
+    this.eTag = eTag;
+    this.offset = offset;
+  }
+
+  public String getObjectKey() {
+    return objectKey;
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public String encode(ObjectMapper objectMapper) {
+    Map<String, Object> token = new LinkedHashMap<>();
+    token.put("k", objectKey);
+    token.put("e", eTag);
+    token.put("o", offset);
+    try {
+      return Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(objectMapper.writeValueAsBytes(token));
+    } catch (Exception ex) {
+      throw new IllegalStateException("Failed to encode cursor", ex);
+    }
+  }
+
+  public static FindingsCursor decode(String token, ObjectMapper objectMapper) {
+    JsonNode node;
+    try {
+      byte[] raw = Base64.getUrlDecoder().decode(token.trim());
+      node = objectMapper.readTree(new String(raw, StandardCharsets.UTF_8));
+    } catch (Exception ex) {
+      throw new IllegalArgumentException("Invalid cursor", ex);
+    }
+    String objectKey = node.path("k").asText(null);
+    String eTag = node.path("e").asText(null);
+    int offset = node.path("o").asInt(-1);
+    if (objectKey == null || objectKey.isBlank() || offset < 0) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    return new FindingsCursor(objectKey, eTag, offset);
+  }
+}
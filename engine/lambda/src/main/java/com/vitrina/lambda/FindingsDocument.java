@@ -0,0 +1,25 @@
+package com.vitrina.lambda;
+
+public class FindingsDocument {
+  private final String objectKey;
+  private final String eTag;
+  private final String body;
+
+  public FindingsDocument(String objectKey, String eTag, String body) {
+    this.objectKey = objectKey;
+    this.eTag = eTag;
+    this.body = body;
+  }
+
+  public String getObjectKey() {
+    return objectKey;
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  public String getBody() {
+    return body;
+  }
+}
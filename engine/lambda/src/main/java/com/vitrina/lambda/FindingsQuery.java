@@ -0,0 +1,154 @@
+package com.vitrina.lambda;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Filter predicates ("where=severity=high,score>=5,service=serviceA") and a dotted-path
+// projection ("fields=fingerprint,payload.severity") applied to one findings item at a time.
+public class FindingsQuery {
+  private static final Pattern PREDICATE =
+      Pattern.compile("^\\s*([A-Za-z0-9_.-]+)\\s*(<=|>=|!=|=|<|>)\\s*(.*?)\\s*$");
+  private static final String SERVICE_FIELD = "service";
+  private static final int MAX_PREDICATES = 10;
+  private static final int MAX_FIELDS = 50;
+
+  private final List<Predicate> predicates;
+  private final List<String[]> fields;
+
+  private FindingsQuery(List<Predicate> predicates, List<String[]> fields) {
+    this.predicates = predicates;
+    this.fields = fields;
+  }
+
+  public static FindingsQuery parse(String where, String fields) {
+    List<Predicate> predicates = new ArrayList<>();
+    if (where != null && !where.isBlank()) {
+      for (String clause : where.split(",")) {
+        Matcher matcher = PREDICATE.matcher(clause);
+        if (!matcher.matches() || matcher.group(3).isEmpty()) {
+          throw new IllegalArgumentException("Invalid filter: " + clause.trim());
+        }
+        String field = matcher.group(1);
+        String operator = matcher.group(2);
+        if (field.equals(SERVICE_FIELD) && !operator.equals("=") && !operator.equals("!=")) {
+          throw new IllegalArgumentException("service filter supports only = and !=");
+        }
+        predicates.add(new Predicate(field.split("\\."), operator, matcher.group(3)));
+      }
+    }
+    List<String[]> projection = new ArrayList<>();
+    if (fields != null && !fields.isBlank()) {
+      for (String field : fields.split(",")) {
+        if (!field.isBlank()) {
+          projection.add(field.trim().split("\\."));
+        }
+      }
+    }
+    if (predicates.size() > MAX_PREDICATES || projection.size() > MAX_FIELDS) {
+      throw new IllegalArgumentException("Too many filters or fields");
+    }
+    return new FindingsQuery(List.copyOf(predicates), List.copyOf(projection));
+  }
+
+  public boolean matches(JsonNode item) {
+    for (Predicate predicate : predicates) {
+      if (!predicate.test(item)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public JsonNode project(JsonNode item) {
+    if (fields.isEmpty() || !item.isObject()) {
+      return item;
+    }
+    ObjectNode projected = JsonNodeFactory.instance.objectNode();
+    for (String[] path : fields) {
+      JsonNode value = resolve(item, path);
+      if (value == null) {
+        continue;
+      }
+      ObjectNode target = projected;
+      for (int i = 0; i < path.length - 1; i++) {
+        JsonNode child = target.get(path[i]);
+        target = child instanceof ObjectNode existing ? existing : target.putObject(path[i]);
+      }
+      target.set(path[path.length - 1], value);
+    }
+    return projected;
+  }
+
+  private static JsonNode resolve(JsonNode item, String[] path) {
+    JsonNode current = item;
+    for (String segment : path) {
+      if (current == null || !current.isObject()) {
+        return null;
+      }
+      current = current.get(segment);
+    }
+    return current == null || current.isMissingNode() ? null : current;
+  }
+
+  private static final class Predicate {
+    private final String[] path;
+    private final String operator;
+    private final String operand;
+
+    private Predicate(String[] path, String operator, String operand) {
+      this.path = path;
+      this.operator = operator;
+      this.operand = operand;
+    }
+
+    private boolean test(JsonNode item) {
+      if (path.length == 1 && path[0].equals(SERVICE_FIELD)) {
+        return reportedBy(item) == operator.equals("=");
+      }
+      JsonNode value = resolve(item, path);
+      if (value == null || value.isNull() || value.isContainerNode()) {
+        return operator.equals("!=");
+      }
+      int comparison = compare(value);
+      return switch (operator) {
+        case "=" -> comparison == 0;
+        case "!=" -> comparison != 0;
+        case "<" -> comparison < 0;
+        case "<=" -> comparison <= 0;
+        case ">" -> comparison > 0;
+        default -> comparison >= 0;
+      };
+    }
+
+    // Concatenated items carry payload.serviceName; de-duplicated findings list services.
+    private boolean reportedBy(JsonNode item) {
+      if (operand.equals(item.path("serviceName").asText(null))
+          || operand.equals(item.path("payload").path("serviceName").asText(null))) {
+        return true;
+      }
+      for (JsonNode service : item.path("services")) {
+        if (operand.equals(service.asText())) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private int compare(JsonNode value) {
+      if (value.isNumber()) {
+        try {
+          return value.decimalValue().compareTo(new BigDecimal(operand));
+        } catch (NumberFormatException ignored) {
+          // Fall back to comparing the text form.
+        }
+      }
+      return value.asText().compareTo(operand);
+    }
+  }
+}
@@ -1,8 +1,14 @@
 package com.vitrina.lambda;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.function.ObjIntConsumer;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -11,10 +17,12 @@ import software.amazon.awssdk.services.s3.model.S3Exception;
 
 public class FindingsReader {
   private final S3Client s3Client;
+  private final ObjectMapper objectMapper;
   private final String bucketName;
 
-  public FindingsReader(S3Client s3Client, String bucketName) {
+  public FindingsReader(S3Client s3Client, ObjectMapper objectMapper, String bucketName) {
     this.s3Client = Objects.requireNonNull(s3Client, "s3Client");
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
     if (bucketName == null || bucketName.isBlank()) {
       throw new IllegalStateException("Orchestrated bucket name is required");
     }
@@ -22,18 +30,75 @@ public class FindingsReader {
   }
 
   public String readFindings(String objectKey) {
-    try (ResponseInputStream<GetObjectResponse> response = s3Client.getObject(GetObjectRequest.builder()
+    return readDocument(objectKey, null).getBody();
+  }
+
+  public FindingsDocument readDocument(String objectKey, String expectedETag) {
+    try (ResponseInputStream<GetObjectResponse> response = open(objectKey, expectedETag)) {
+      String body = new String(response.readAllBytes(), StandardCharsets.UTF_8);
+      return new FindingsDocument(objectKey, response.response().eTag(), body);
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to read findings", ex);
+    }
+  }
+
+  // Streams the items array of a merged document, materializing one item at a time, and
+  // returns the ETag of the version that was read. A document without an items array is
+  // visited as a single item, matching how findings pages have always treated it.
+  public String scanItems(String objectKey, String expectedETag, ObjIntConsumer<JsonNode> visitor) {
+    try (ResponseInputStream<GetObjectResponse> response = open(objectKey, expectedETag);
+        JsonParser parser = objectMapper.getFactory().createParser(response)) {
+      JsonToken root = parser.nextToken();
+      if (root == JsonToken.START_ARRAY) {
+        visitArray(parser, visitor);
+      } else if (root == JsonToken.START_OBJECT) {
+        ObjectNode fields = objectMapper.createObjectNode();
+        boolean hasItems = false;
+        while (!hasItems && parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          if (parser.nextToken() == JsonToken.START_ARRAY && "items".equals(field)) {
+            visitArray(parser, visitor);
+            hasItems = true;
+          } else {
+            fields.set(field, objectMapper.readTree(parser));
+          }
+        }
+        if (!hasItems) {
+          visitor.accept(fields, 0);
+        }
+      } else if (root != null) {
+        visitor.accept(objectMapper.readTree(parser), 0);
+      }
+      return response.response().eTag();
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to read findings", ex);
+    }
+  }
+
+  private void visitArray(JsonParser parser, ObjIntConsumer<JsonNode> visitor) throws IOException {
+    int index = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      visitor.accept(objectMapper.readTree(parser), index++);
+    }
+  }
+
+  private ResponseInputStream<GetObjectResponse> open(String objectKey, String expectedETag) {
+    GetObjectRequest.Builder request = GetObjectRequest.builder()
         .bucket(bucketName)
-        .key(objectKey)
-        .build())) {
-      return new String(response.readAllBytes(), StandardCharsets.UTF_8);
+        .key(objectKey);
+    if (expectedETag != null && !expectedETag.isBlank()) {
+      request.ifMatch(expectedETag);
+    }
+    try {
+      return s3Client.getObject(request.build());
     } catch (S3Exception ex) {
       if (ex.statusCode() == 404) {
         throw new NotFoundException("findings not found");
       }
+      if (ex.statusCode() == 412) {
+        throw new IllegalArgumentException("cursor no longer matches findings");
+      }
       throw ex;
-    } catch (IOException ex) {
-      throw new RuntimeException("Failed to read findings", ex);
     }
   }
 }
@@ -1,12 +1,17 @@
 package com.vitrina.lambda;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.SpanExporter;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.sqs.SqsClient;
@@ -28,6 +33,11 @@ public class FunctionConfig {
     return S3Client.builder().build();
   }
 
+  @Bean
+  public CloudWatchClient cloudWatchClient() {
+    return CloudWatchClient.builder().build();
+  }
+
   @Bean
   public ObjectMapper objectMapper() {
     return new ObjectMapper();
@@ -35,8 +45,26 @@ public class FunctionConfig {
 
   @Bean
   public OrchestrationStore orchestrationStore(DynamoDbClient dynamoDbClient,
-      @Value("${app.dynamo.table-name}") String tableName) {
-    return new DynamoDbOrchestrationStore(dynamoDbClient, tableName);
+      @Value("${app.dynamo.table-name}") String tableName,
+      @Value("${app.listing.shards}") int listShards,
+      @Value("${app.result-reuse.max-age-minutes}") long reuseMaxAgeMinutes) {
+    return new DynamoDbOrchestrationStore(dynamoDbClient, tableName, listShards,
+        Duration.ofMinutes(reuseMaxAgeMinutes), Clock.systemUTC());
+  }
+
+  @Bean
+  public IdempotencyStore idempotencyStore(DynamoDbClient dynamoDbClient,
+      @Value("${app.idempotency.table-name}") String tableName,
+      @Value("${app.idempotency.ttl-hours}") long ttlHours) {
+    return new DynamoDbIdempotencyStore(
+        dynamoDbClient, tableName, Duration.ofHours(ttlHours), Clock.systemUTC());
+  }
+
+  @Bean
+  public OrchestrationLister orchestrationLister(DynamoDbClient dynamoDbClient,
+      @Value("${app.dynamo.table-name}") String tableName,
+      @Value("${app.listing.shards}") int listShards) {
+    return new OrchestrationLister(dynamoDbClient, tableName, listShards);
   }
 
   @Bean
@@ -47,8 +75,15 @@ public class FunctionConfig {
 
   @Bean
   public FindingsReader findingsReader(S3Client s3Client,
+      ObjectMapper objectMapper,
       @Value("${app.s3.orchestrated-bucket-name}") String bucketName) {
-    return new FindingsReader(s3Client, bucketName);
+    return new FindingsReader(s3Client, objectMapper, bucketName);
+  }
+
+  @Bean
+  public ServiceOutputReader serviceOutputReader(S3Client s3Client,
+      @Value("${app.s3.service-buckets}") String serviceBuckets) {
+    return ServiceOutputReader.fromSpec(s3Client, serviceBuckets);
   }
 
   @Bean
@@ -61,20 +96,54 @@ public class FunctionConfig {
     return Map.copyOf(publishers);
   }
 
+  @Bean
+  public AdmissionController admissionController(SqsClient sqsClient,
+      CloudWatchClient cloudWatchClient,
+      @Value("${app.sqs.queue-url-a}") String queueUrlA,
+      @Value("${app.sqs.queue-url-b}") String queueUrlB,
+      @Value("${app.admission.max-queue-depth}") long maxQueueDepth,
+      @Value("${app.admission.max-oldest-message-age-seconds}") long maxOldestMessageAgeSeconds,
+      @Value("${app.admission.refresh-seconds}") long refreshSeconds,
+      @Value("${app.admission.retry-after-seconds}") int retryAfterSeconds) {
+    return new QueueBacklogAdmissionController(sqsClient, cloudWatchClient,
+        List.of(queueUrlA, queueUrlB), maxQueueDepth,
+        Duration.ofSeconds(maxOldestMessageAgeSeconds), Duration.ofSeconds(refreshSeconds),
+        retryAfterSeconds, Clock.systemUTC());
+  }
+
   @Bean
   public PushService pushService(Map<String, MessagePublisher> publishers,
       OrchestrationStore orchestrationStore,
-      ObjectMapper objectMapper) {
-    return new PushService(publishers, orchestrationStore, objectMapper);
+      ObjectMapper objectMapper,
+      AdmissionController admissionController,
+      IdempotencyStore idempotencyStore,
+      @Value("${app.routing.rules}") String routingRules,
+      @Value("${app.sharding.items-per-shard}") int itemsPerShard,
+      @Value("${app.sharding.max-shards}") int maxShards,
+      @Value("${app.validation.schema-file}") String schemaFile,
+      @Value("${app.tracing.otlp-file}") String otlpFile) {
+    return new PushService(publishers, orchestrationStore, objectMapper, admissionController,
+        idempotencyStore, RoutingRules.parse(routingRules, publishers.keySet()),
+        new PayloadSharder(itemsPerShard, maxShards), PayloadSchema.load(objectMapper, schemaFile),
+        new SpanExporter(objectMapper, otlpFile, "pushToSqs"));
+  }
+
+  @Bean
+  public ResponseCompressor responseCompressor(
+      @Value("${app.http.compression-min-bytes}") int compressionMinBytes) {
+    return new ResponseCompressor(compressionMinBytes);
   }
 
   @Bean
   public OrchestrationApiHandler orchestrationApiHandler(PushService pushService,
       OrchestrationStatusReader orchestrationStatusReader,
       FindingsReader findingsReader,
-      ObjectMapper objectMapper) {
-    return new OrchestrationApiHandler(
-        pushService, orchestrationStatusReader, findingsReader, objectMapper);
+      ObjectMapper objectMapper,
+      ResponseCompressor responseCompressor,
+      ServiceOutputReader serviceOutputReader,
+      OrchestrationLister orchestrationLister) {
+    return new OrchestrationApiHandler(pushService, orchestrationStatusReader, findingsReader,
+        objectMapper, responseCompressor, serviceOutputReader, orchestrationLister);
   }
 
   @Bean
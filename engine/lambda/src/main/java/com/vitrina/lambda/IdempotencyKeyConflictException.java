@@ -0,0 +1,7 @@
+package com.vitrina.lambda;
+
+public class IdempotencyKeyConflictException extends RuntimeException {
+  public IdempotencyKeyConflictException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,13 @@
+package com.vitrina.lambda;
+
+public interface IdempotencyStore {
+  // Returns the requestId that owns an unexpired key, or null when the key is free. Throws
+  // IdempotencyKeyConflictException if the key was used for another body.
+  String find(String idempotencyKey, String requestHash);
+
+  // Returns the requestId that owns the key: the given one when the key was free, otherwise
+  // the original. Throws IdempotencyKeyConflictException if the key was used for another body.
+  String claim(String idempotencyKey, String requestHash, String requestId);
+
+  void release(String idempotencyKey, String requestId);
+}
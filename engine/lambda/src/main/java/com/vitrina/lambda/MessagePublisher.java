@@ -1,5 +1,12 @@
 package com.vitrina.lambda;
 
+import java.util.Map;
+
 public interface MessagePublisher {
   String publish(String payload);
+
+  // Attributes travel as SQS string message attributes; publishers without them drop them.
+  default String publish(String payload, Map<String, String> attributes) {
+    return publish(payload);
+  }
 }
@@ -1,38 +1,74 @@
 package com.vitrina.lambda;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
 
 public class OrchestrationApiHandler {
   private static final String CONTENT_TYPE_HEADER = "Content-Type";
   private static final String APPLICATION_JSON = "application/json";
+  private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+  private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+  private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  private static final int MAX_PAGE_SIZE = 200;
+  private static final int MAX_CURSOR_PAGE_ITEMS = 10_000;
+  private static final int DEFAULT_PAGE_BYTES = 1024 * 1024;
+  // The body is escaped again inside the proxy response, so stay well below the 6 MB Lambda limit.
+  private static final int MAX_PAGE_BYTES = 4 * 1024 * 1024;
+  private static final int PAGE_ENVELOPE_BYTES = 1024;
+  // Partial cursors never match a merged document, so they cannot be replayed against it.
+  private static final String PARTIAL_CURSOR_ETAG = "partial";
+  // Keeps long-polls inside the 20 second Lambda timeout.
+  private static final int MAX_STATUS_WAIT_SECONDS = 15;
+  private static final int DEFAULT_LIST_LIMIT = 50;
+  private static final int MAX_LIST_LIMIT = 100;
 
   private final PushService pushService;
   private final OrchestrationStatusReader statusReader;
   private final FindingsReader findingsReader;
   private final ObjectMapper objectMapper;
+  private final ResponseCompressor responseCompressor;
+  private final ServiceOutputReader serviceOutputReader;
+  private final OrchestrationLister orchestrationLister;
 
   public OrchestrationApiHandler(PushService pushService,
       OrchestrationStatusReader statusReader,
       FindingsReader findingsReader,
-      ObjectMapper objectMapper) {
+      ObjectMapper objectMapper,
+      ResponseCompressor responseCompressor,
+      ServiceOutputReader serviceOutputReader,
+      OrchestrationLister orchestrationLister) {
     this.pushService = Objects.requireNonNull(pushService, "pushService");
     this.statusReader = Objects.requireNonNull(statusReader, "statusReader");
     this.findingsReader = Objects.requireNonNull(findingsReader, "findingsReader");
     this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.responseCompressor = Objects.requireNonNull(responseCompressor, "responseCompressor");
+    this.serviceOutputReader = Objects.requireNonNull(serviceOutputReader, "serviceOutputReader");
+    this.orchestrationLister = Objects.requireNonNull(orchestrationLister, "orchestrationLister");
   }
 
   public Map<String, Object> handle(Map<String, Object> event) {
     if (!isHttpEvent(event)) {
       return pushService.push(event);
     }
+    return encodeResponse(event, route(event));
+  }
 
+  private Map<String, Object> route(Map<String, Object> event) {
     try {
       String method = resolveMethod(event);
       String path = resolvePath(event);
@@ -47,9 +83,15 @@ public class OrchestrationApiHandler {
         if (path != null && path.contains("/findings")) {
           return handleFindings(event);
         }
+        if (path != null && path.contains("/orchestrations")) {
+          return handleList(event);
+        }
         return errorResponse(404, "Unknown endpoint");
       }
 
+      if (path != null && path.contains("/status/batch")) {
+        return handleBatchStatus(event);
+      }
       if (path != null && !path.contains("/scan")) {
         return errorResponse(404, "Unknown endpoint");
       }
@@ -58,8 +100,16 @@ public class OrchestrationApiHandler {
       if (body == null || body.isEmpty()) {
         return errorResponse(400, "payload is required");
       }
-      Map<String, Object> response = pushService.push(body);
+      Map<String, Object> response =
+          pushService.push(body, extractHeader(event, IDEMPOTENCY_KEY_HEADER));
       return jsonResponse(202, response);
+    } catch (OverloadedException ex) {
+      return withHeader(errorResponse(429, ex.getMessage()),
+          RETRY_AFTER_HEADER, Integer.toString(ex.getRetryAfterSeconds()));
+    } catch (IdempotencyKeyConflictException ex) {
+      return errorResponse(409, ex.getMessage());
+    } catch (PayloadValidationException ex) {
+      return jsonResponse(400, Map.of("error", ex.getMessage(), "errors", ex.getErrors()));
     } catch (IllegalArgumentException ex) {
       return errorResponse(400, ex.getMessage());
     } catch (Exception ex) {
@@ -74,17 +124,84 @@ public class OrchestrationApiHandler {
     }
     try {
       OrchestrationRecord record = statusReader.readRecord(requestId);
-      Map<String, Object> payload = new HashMap<>();
-      payload.put("requestId", requestId);
-      payload.put("engine", record.getEngine());
-      payload.put("finalStatus", record.getFinalStatus());
-      payload.put("mergedKey", record.getMergedKey());
-      return jsonResponse(200, payload);
+      int waitSeconds = Math.min(
+          parsePositiveInt(extractQueryParam(event, "waitSeconds"), 0), MAX_STATUS_WAIT_SECONDS);
+      String knownStatus = extractQueryParam(event, "lastStatus");
+      if (knownStatus == null || knownStatus.isBlank()) {
+        knownStatus = record.getFinalStatus();
+      }
+      if (waitSeconds > 0
+          && !isTerminalStatus(record.getFinalStatus())
+          && Objects.equals(knownStatus, record.getFinalStatus())) {
+        record = statusReader.awaitFinalStatusChange(
+            requestId, record, knownStatus, Duration.ofSeconds(waitSeconds));
+      }
+      return jsonResponse(200, statusPayload(record));
     } catch (NotFoundException ex) {
       return errorResponse(404, ex.getMessage());
     }
   }
 
+  private Map<String, Object> handleBatchStatus(Map<String, Object> event) {
+    Map<String, Object> body = parseBody(event);
+    Object rawIds = body == null ? null : body.get("requestIds");
+    if (!(rawIds instanceof List<?> ids) || ids.isEmpty()) {
+      return errorResponse(400, "requestIds is required");
+    }
+    List<String> requestIds = new ArrayList<>();
+    for (Object id : ids) {
+      if (!(id instanceof String value) || value.isBlank()) {
+        return errorResponse(400, "requestIds must be non-empty strings");
+      }
+      requestIds.add(value.trim());
+    }
+    Map<String, OrchestrationRecord> records = statusReader.readRecords(requestIds);
+    List<Map<String, Object>> statuses = new ArrayList<>();
+    List<String> notFound = new ArrayList<>();
+    for (String requestId : new LinkedHashSet<>(requestIds)) {
+      OrchestrationRecord record = records.get(requestId);
+      if (record == null) {
+        notFound.add(requestId);
+      } else {
+        statuses.add(statusPayload(record));
+      }
+    }
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("statuses", statuses);
+    payload.put("notFound", notFound);
+    return jsonResponse(200, payload);
+  }
+
+  private Map<String, Object> statusPayload(OrchestrationRecord record) {
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("requestId", record.getRequestId());
+    payload.put("engine", record.getEngine());
+    payload.put("finalStatus", record.getFinalStatus());
+    payload.put("mergedKey", record.getMergedKey());
+    if (record.getSummary() != null) {
+      payload.put("summary", record.getSummary());
+    }
+    if (record.getResources() != null) {
+      payload.put("resources", record.getResources());
+    }
+    return payload;
+  }
+
+  private Map<String, Object> handleList(Map<String, Object> event) {
+    String status = extractQueryParam(event, "status");
+    String before = extractQueryParam(event, "before");
+    int limit = Math.min(
+        parsePositiveInt(extractQueryParam(event, "limit"), DEFAULT_LIST_LIMIT), MAX_LIST_LIMIT);
+    OrchestrationPage page = orchestrationLister.list(
+        status == null || status.isBlank() ? null : status.trim().toUpperCase(Locale.ROOT),
+        before == null || before.isBlank() ? null : before.trim(),
+        limit);
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("items", page.getItems());
+    payload.put("nextBefore", page.getNextBefore());
+    return jsonResponse(200, payload);
+  }
+
   private Map<String, Object> handleFindings(Map<String, Object> event) {
     String requestId = extractRequestId(event);
     if (requestId == null || requestId.isBlank()) {
@@ -93,15 +210,23 @@ public class OrchestrationApiHandler {
     try {
       OrchestrationRecord record = statusReader.readRecord(requestId);
       String finalStatus = record.getFinalStatus();
+      if (!isTerminalStatus(finalStatus)
+          && Boolean.parseBoolean(extractQueryParam(event, "partial"))) {
+        Map<String, Object> partial = partialFindings(record, event);
+        if (partial != null) {
+          return jsonResponse(200, partial);
+        }
+      }
       if (finalStatus == null || !finalStatus.equalsIgnoreCase("DONE")) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("requestId", requestId);
         payload.put("finalStatus", finalStatus == null ? "PENDING" : finalStatus);
         payload.put("engine", record.getEngine());
-        return jsonResponse(202, payload);
+        return jsonResponse(isGone(finalStatus) ? 410 : 202, payload);
       }
 
-      String objectKey = extractQueryParam(event, "key");
+      FindingsCursor cursor = decodeCursor(event);
+      String objectKey = cursor != null ? cursor.getObjectKey() : extractQueryParam(event, "key");
       if (objectKey == null || objectKey.isBlank()) {
         objectKey = record.getMergedKey();
       }
@@ -109,15 +234,115 @@ public class OrchestrationApiHandler {
         objectKey = requestId + ".json";
       }
 
-      String findingsJson = findingsReader.readFindings(objectKey);
-      return jsonResponse(200, paginateFindings(findingsJson, requestId, objectKey, event));
+      return jsonResponse(200, paginateFindings(objectKey, requestId, cursor, event));
     } catch (NotFoundException ex) {
       return errorResponse(404, ex.getMessage());
+    } catch (IllegalArgumentException ex) {
+      return errorResponse(400, ex.getMessage());
     } catch (Exception ex) {
       return errorResponse(500, "Internal server error");
     }
   }
 
+  private FindingsCursor decodeCursor(Map<String, Object> event) {
+    String cursorToken = extractQueryParam(event, "cursor");
+    if (cursorToken == null || cursorToken.isBlank()) {
+      return null;
+    }
+    return FindingsCursor.decode(cursorToken, objectMapper);
+  }
+
+  // Outputs of services that already finished, in service order, until the merge exists. Each
+  // shard of a sharded service is its own item, as in the concatenated merge, and is served as
+  // soon as it finishes. Every output keeps its index slot while it is pending, so cursors stay
+  // valid as services finish.
+  // Pages take the same where/fields/maxBytes/size parameters as cursor pages of the merged
+  // document; outputs past the first page are not fetched, so total counts only the outputs
+  // read, and an output larger than a whole page is listed under omittedServices instead.
+  private Map<String, Object> partialFindings(OrchestrationRecord record,
+      Map<String, Object> event) throws Exception {
+    FindingsCursor cursor = decodeCursor(event);
+    if (cursor != null && !PARTIAL_CURSOR_ETAG.equals(cursor.getETag())) {
+      throw new IllegalArgumentException("cursor does not belong to partial findings");
+    }
+    FindingsPage page = cursorPage(parseQuery(event), event, cursor);
+    List<String> completed = new ArrayList<>();
+    List<String> pending = new ArrayList<>();
+    List<String> omitted = new ArrayList<>();
+    boolean available = false;
+    int index = 0;
+    for (String service : new TreeMap<>(record.getEngine()).keySet()) {
+      boolean readable = serviceOutputReader.canRead(service);
+      boolean finished = readable;
+      for (String outputKey : record.outputKeys(service)) {
+        if (readable && outputKey != null) {
+          available = true;
+          readPartialOutput(page, service, outputKey, index, omitted);
+        } else {
+          finished = false;
+        }
+        index++;
+      }
+      if (finished && "DONE".equalsIgnoreCase(record.getEngine().get(service))) {
+        completed.add(service);
+      } else {
+        pending.add(service);
+      }
+    }
+    if (!available) {
+      return null;
+    }
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("requestId", record.getRequestId());
+    payload.put("partial", true);
+    payload.put("finalStatus",
+        record.getFinalStatus() == null ? "PENDING" : record.getFinalStatus());
+    payload.put("completedServices", completed);
+    payload.put("pendingServices", pending);
+    payload.put("omittedServices", omitted);
+    payload.put("offset", page.fromIndex);
+    payload.put("maxBytes", page.maxBytes);
+    payload.put("total", page.total);
+    payload.put("items", page.items);
+    payload.put("nextCursor", page.nextOffset < 0 ? null
+        : new FindingsCursor(record.getRequestId() + ".json", PARTIAL_CURSOR_ETAG,
+            page.nextOffset).encode(objectMapper));
+    return payload;
+  }
+
+  private void readPartialOutput(FindingsPage page,
+      String service,
+      String outputKey,
+      int index,
+      List<String> omitted) throws Exception {
+    if (index < page.fromIndex) {
+      return;
+    }
+    if (page.full) {
+      if (page.nextOffset < 0) {
+        page.nextOffset = index;
+      }
+      return;
+    }
+    String output = serviceOutputReader.readOutput(service, outputKey, MAX_PAGE_BYTES);
+    if (output == null) {
+      if (!omitted.contains(service)) {
+        omitted.add(service);
+      }
+      return;
+    }
+    page.accept(objectMapper.readTree(output), index);
+  }
+
+  private boolean isTerminalStatus(String finalStatus) {
+    return "DONE".equalsIgnoreCase(finalStatus) || isGone(finalStatus);
+  }
+
+  // Requests that will never produce findings.
+  private boolean isGone(String finalStatus) {
+    return "EXPIRED".equalsIgnoreCase(finalStatus) || "FAILED".equalsIgnoreCase(finalStatus);
+  }
+
   private boolean isHttpEvent(Map<String, Object> event) {
     if (event == null) {
       return false;
@@ -185,6 +410,18 @@ public class OrchestrationApiHandler {
     return null;
   }
 
+  private String extractHeader(Map<String, Object> event, String name) {
+    Object headersObj = event.get("headers");
+    if (headersObj instanceof Map<?, ?> headers) {
+      for (Map.Entry<?, ?> entry : headers.entrySet()) {
+        if (entry.getKey() != null && name.equalsIgnoreCase(entry.getKey().toString())) {
+          return entry.getValue() == null ? null : entry.getValue().toString();
+        }
+      }
+    }
+    return null;
+  }
+
   private Map<String, Object> jsonResponse(int statusCode, Object body) {
     try {
       return rawJsonResponse(statusCode, objectMapper.writeValueAsString(body));
@@ -202,50 +439,98 @@ public class OrchestrationApiHandler {
     return response;
   }
 
+  private Map<String, Object> encodeResponse(Map<String, Object> event, Map<String, Object> response) {
+    if (!(response.get("body") instanceof String body)
+        || Boolean.TRUE.equals(response.get("isBase64Encoded"))) {
+      return response;
+    }
+    byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+    String encoding = responseCompressor.negotiate(extractHeader(event, ACCEPT_ENCODING_HEADER), raw.length);
+    if (encoding == null) {
+      return response;
+    }
+    byte[] compressed = responseCompressor.compress(raw, encoding);
+    if (compressed.length >= raw.length) {
+      return response;
+    }
+    withHeader(response, CONTENT_ENCODING_HEADER, encoding);
+    withHeader(response, "Vary", ACCEPT_ENCODING_HEADER);
+    response.put("body", Base64.getEncoder().encodeToString(compressed));
+    response.put("isBase64Encoded", true);
+    return response;
+  }
+
+  private Map<String, Object> withHeader(Map<String, Object> response, String name, String value) {
+    Map<String, Object> headers = new HashMap<>();
+    if (response.get("headers") instanceof Map<?, ?> existing) {
+      for (Map.Entry<?, ?> entry : existing.entrySet()) {
+        headers.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+    }
+    headers.put(name, value);
+    response.put("headers", headers);
+    return response;
+  }
+
   private Map<String, Object> errorResponse(int statusCode, String message) {
     Map<String, Object> payload = Map.of("error", message);
     return jsonResponse(statusCode, payload);
   }
 
-  private Map<String, Object> paginateFindings(String findingsJson,
+  private Map<String, Object> paginateFindings(String objectKey,
       String requestId,
-      String objectKey,
-      Map<String, Object> event) throws Exception {
-    JsonNode root = objectMapper.readTree(findingsJson);
-    JsonNode itemsNode = root;
-    if (root.isObject() && root.has("items")) {
-      itemsNode = root.get("items");
-    }
-    if (!itemsNode.isArray()) {
-      ArrayNode wrapped = objectMapper.createArrayNode();
-      wrapped.add(root);
-      itemsNode = wrapped;
-    }
+      FindingsCursor cursor,
+      Map<String, Object> event) {
+    FindingsQuery query = parseQuery(event);
+    String maxBytesParam = extractQueryParam(event, "maxBytes");
+    Map<String, Object> payload = new HashMap<>();
+    payload.put("requestId", requestId);
+    payload.put("mergedKey", objectKey);
 
-    int total = itemsNode.size();
-    int page = parsePositiveInt(extractQueryParam(event, "page"), 1);
-    int size = parsePositiveInt(extractQueryParam(event, "size"), 50);
-    if (size > 200) {
-      size = 200;
+    FindingsPage page;
+    if (cursor == null && (maxBytesParam == null || maxBytesParam.isBlank())) {
+      int pageNumber = parsePositiveInt(extractQueryParam(event, "page"), 1);
+      int size = parsePositiveInt(extractQueryParam(event, "size"), 50);
+      if (size > MAX_PAGE_SIZE) {
+        size = MAX_PAGE_SIZE;
+      }
+      page = new FindingsPage(query, 0, (pageNumber - 1) * size, size, 0);
+      payload.put("page", pageNumber);
+      payload.put("size", size);
+    } else {
+      page = cursorPage(query, event, cursor);
+      payload.put("offset", page.fromIndex);
+      payload.put("maxBytes", page.maxBytes);
     }
-    int fromIndex = Math.max(0, (page - 1) * size);
-    int toIndex = Math.min(total, fromIndex + size);
 
-    ArrayNode pageItems = objectMapper.createArrayNode();
-    for (int i = fromIndex; i < toIndex; i++) {
-      pageItems.add(itemsNode.get(i));
+    String eTag = findingsReader.scanItems(
+        objectKey, cursor == null ? null : cursor.getETag(), page);
+    String nextCursor = null;
+    if (page.nextOffset >= 0) {
+      nextCursor = new FindingsCursor(objectKey, eTag, page.nextOffset).encode(objectMapper);
     }
-
-    Map<String, Object> payload = new HashMap<>();
-    payload.put("requestId", requestId);
-    payload.put("mergedKey", objectKey);
-    payload.put("page", page);
-    payload.put("size", size);
-    payload.put("total", total);
-    payload.put("items", pageItems);
+    payload.put("total", page.total);
+    payload.put("items", page.items);
+    payload.put("nextCursor", nextCursor);
     return payload;
   }
 
+  private FindingsQuery parseQuery(Map<String, Object> event) {
+    return FindingsQuery.parse(
+        extractQueryParam(event, "where"), extractQueryParam(event, "fields"));
+  }
+
+  private FindingsPage cursorPage(FindingsQuery query,
+      Map<String, Object> event,
+      FindingsCursor cursor) {
+    int maxBytes = Math.min(
+        parsePositiveInt(extractQueryParam(event, "maxBytes"), DEFAULT_PAGE_BYTES), MAX_PAGE_BYTES);
+    int maxItems = Math.min(
+        parsePositiveInt(extractQueryParam(event, "size"), MAX_CURSOR_PAGE_ITEMS),
+        MAX_CURSOR_PAGE_ITEMS);
+    return new FindingsPage(query, cursor == null ? 0 : cursor.getOffset(), 0, maxItems, maxBytes);
+  }
+
   private int parsePositiveInt(String rawValue, int fallback) {
     if (rawValue == null || rawValue.isBlank()) {
       return fallback;
@@ -304,4 +589,74 @@ public class OrchestrationApiHandler {
     String text = value.toString();
     return text.isBlank() ? null : text;
   }
+
+  // Collects one page of matching items while the reader streams the document. Cursor offsets
+  // are raw item indexes, so a follow-up page resumes the scan where this one stopped.
+  private final class FindingsPage implements ObjIntConsumer<JsonNode> {
+    private final FindingsQuery query;
+    private final int fromIndex;
+    private final int skipMatches;
+    private final int maxItems;
+    private final long maxBytes;
+    private final ArrayNode items = objectMapper.createArrayNode();
+    private int total;
+    private int skipped;
+    private long pageBytes = PAGE_ENVELOPE_BYTES;
+    private boolean full;
+    private int nextOffset = -1;
+
+    private FindingsPage(FindingsQuery query,
+        int fromIndex,
+        int skipMatches,
+        int maxItems,
+        long maxBytes) {
+      this.query = query;
+      this.fromIndex = fromIndex;
+      this.skipMatches = skipMatches;
+      this.maxItems = maxItems;
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void accept(JsonNode item, int index) {
+      if (!query.matches(item)) {
+        return;
+      }
+      total++;
+      if (index < fromIndex) {
+        return;
+      }
+      if (skipped < skipMatches) {
+        skipped++;
+        return;
+      }
+      if (full) {
+        if (nextOffset < 0) {
+          nextOffset = index;
+        }
+        return;
+      }
+      JsonNode projected = query.project(item);
+      if (maxBytes > 0) {
+        int itemBytes = measure(projected) + 1;
+        // Always return at least one item so an oversized item cannot stall the cursor.
+        if (!items.isEmpty() && pageBytes + itemBytes > maxBytes) {
+          full = true;
+          nextOffset = index;
+          return;
+        }
+        pageBytes += itemBytes;
+      }
+      items.add(projected);
+      full = items.size() >= maxItems;
+    }
+
+    private int measure(JsonNode item) {
+      try {
+        return objectMapper.writeValueAsBytes(item).length;
+      } catch (JsonProcessingException ex) {
+        throw new IllegalStateException("Failed to serialize finding", ex);
+      }
+    }
+  }
 }
@@ -0,0 +1,131 @@
+package com.vitrina.lambda;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+// Lists records newest first by reading every shard of the listing index. A page only
+// contains IDs that all shards have been read past, and the cursor is the ID to continue
+// below, so pages stay consistent while new requests keep arriving.
+public class OrchestrationLister {
+  public static final String LIST_INDEX = "RecentRequestsIndex";
+  public static final String LIST_SHARD_ATTRIBUTE = "listShard";
+  private static final int MAX_QUERIES_PER_SHARD = 5;
+
+  private final DynamoDbClient dynamoDbClient;
+  private final String tableName;
+  private final int shards;
+
+  public OrchestrationLister(DynamoDbClient dynamoDbClient, String tableName, int shards) {
+    this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
+    if (tableName == null || tableName.isBlank()) {
+      throw new IllegalStateException("DynamoDB table name is required");
+    }
+    if (shards < 1) {
+      throw new IllegalStateException("Listing shard count must be positive");
+    }
+    this.tableName = tableName;
+    this.shards = shards;
+  }
+
+  public static String shardFor(String requestId, int shards) {
+    return Integer.toString(Math.floorMod(requestId.hashCode(), shards));
+  }
+
+  public OrchestrationPage list(String status, String before, int limit) {
+    List<Map<String, AttributeValue>> matches = new ArrayList<>();
+    String floor = null;
+    for (int shard = 0; shard < shards; shard++) {
+      String readTo = queryShard(Integer.toString(shard), status, before, limit, matches);
+      if (readTo != null && (floor == null || readTo.compareTo(floor) > 0)) {
+        floor = readTo;
+      }
+    }
+    matches.sort(Comparator.comparing(
+        (Map<String, AttributeValue> item) -> item.get("requestId").s()).reversed());
+
+    List<Map<String, Object>> items = new ArrayList<>();
+    for (Map<String, AttributeValue> match : matches) {
+      String requestId = match.get("requestId").s();
+      if (items.size() == limit || (floor != null && requestId.compareTo(floor) < 0)) {
+        break;
+      }
+      items.add(toSummary(match));
+    }
+    String nextBefore = null;
+    if (items.size() == limit && (floor != null || matches.size() > limit)) {
+      nextBefore = (String) items.get(items.size() - 1).get("requestId");
+    } else if (floor != null) {
+      nextBefore = floor;
+    }
+    return new OrchestrationPage(items, nextBefore);
+  }
+
+  // Returns the last ID read when the shard has more records, or null once it is exhausted.
+  private String queryShard(String shard,
+      String status,
+      String before,
+      int limit,
+      List<Map<String, AttributeValue>> matches) {
+    Map<String, String> names = new HashMap<>();
+    Map<String, AttributeValue> values = new HashMap<>();
+    names.put("#shard", LIST_SHARD_ATTRIBUTE);
+    values.put(":shard", AttributeValue.builder().s(shard).build());
+    String keyCondition = "#shard = :shard";
+    if (before != null) {
+      names.put("#requestId", "requestId");
+      values.put(":before", AttributeValue.builder().s(before).build());
+      keyCondition += " AND #requestId < :before";
+    }
+    String filter = null;
+    if (status != null) {
+      names.put("#finalStatus", "finalStatus");
+      values.put(":status", AttributeValue.builder().s(status).build());
+      filter = "#finalStatus = :status";
+    }
+
+    Map<String, AttributeValue> startKey = null;
+    int found = 0;
+    for (int query = 0; query < MAX_QUERIES_PER_SHARD && found < limit; query++) {
+      QueryResponse response = dynamoDbClient.query(QueryRequest.builder()
+          .tableName(tableName)
+          .indexName(LIST_INDEX)
+          .keyConditionExpression(keyCondition)
+          .filterExpression(filter)
+          .expressionAttributeNames(names)
+          .expressionAttributeValues(values)
+          .scanIndexForward(false)
+          .limit(limit)
+          .exclusiveStartKey(startKey)
+          .build());
+      matches.addAll(response.items());
+      found += response.items().size();
+      startKey = response.lastEvaluatedKey();
+      if (startKey == null || startKey.isEmpty()) {
+        return null;
+      }
+    }
+    return startKey.get("requestId").s();
+  }
+
+  private Map<String, Object> toSummary(Map<String, AttributeValue> item) {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("requestId", item.get("requestId").s());
+    summary.put("finalStatus", readString(item.get("finalStatus")));
+    summary.put("mergedKey", readString(item.get("mergedKey")));
+    summary.put("createdAt", readString(item.get("createdAt")));
+    return summary;
+  }
+
+  private String readString(AttributeValue attr) {
+    return attr == null ? null : attr.s();
+  }
+}
@@ -0,0 +1,22 @@
+package com.vitrina.lambda;
+
+import java.util.List;
+import java.util.Map;
+
+public class OrchestrationPage {
+  private final List<Map<String, Object>> items;
+  private final String nextBefore;
+
+  public OrchestrationPage(List<Map<String, Object>> items, String nextBefore) {
+    this.items = items;
+    this.nextBefore = nextBefore;
+  }
+
+  public List<Map<String, Object>> getItems() {
+    return items;
+  }
+
+  public String getNextBefore() {
+    return nextBefore;
+  }
+}
@@ -1,24 +1,39 @@
 package com.vitrina.lambda;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class OrchestrationRecord {
   private final String requestId;
   private final Map<String, String> engine;
   private final Map<String, String> outputs;
+  private final Map<String, String> shardOutputs;
+  private final int shardCount;
   private final String finalStatus;
   private final String mergedKey;
+  private final Map<String, Object> summary;
+  private final Map<String, Object> resources;
 
   public OrchestrationRecord(String requestId,
       Map<String, String> engine,
       Map<String, String> outputs,
+      Map<String, String> shardOutputs,
+      int shardCount,
       String finalStatus,
-      String mergedKey) {
+      String mergedKey,
+      Map<String, Object> summary,
+      Map<String, Object> resources) {
     this.requestId = requestId;
     this.engine = engine;
     this.outputs = outputs;
+    this.shardOutputs = shardOutputs;
+    this.shardCount = shardCount;
     this.finalStatus = finalStatus;
     this.mergedKey = mergedKey;
+    this.summary = summary;
+    this.resources = resources;
   }
 
   public String getRequestId() {
@@ -33,6 +48,19 @@ public class OrchestrationRecord {
     return outputs;
   }
 
+  // A service's output keys in merge order: one per shard for sharded requests, with null for
+  // shards that have not finished, otherwise its single output (or null while it runs).
+  public List<String> outputKeys(String service) {
+    if (shardCount < 1) {
+      return Collections.singletonList(outputs.get(service));
+    }
+    List<String> keys = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      keys.add(shardOutputs.get(service + "/" + shard));
+    }
+    return keys;
+  }
+
   public String getFinalStatus() {
     return finalStatus;
   }
@@ -40,4 +68,12 @@ public class OrchestrationRecord {
   public String getMergedKey() {
     return mergedKey;
   }
+
+  public Map<String, Object> getSummary() {
+    return summary;
+  }
+
+  public Map<String, Object> getResources() {
+    return resources;
+  }
 }
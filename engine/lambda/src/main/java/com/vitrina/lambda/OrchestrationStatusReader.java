@@ -1,14 +1,31 @@
 package com.vitrina.lambda;
 
+import com.vitrina.common.ResourceUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 
 public class OrchestrationStatusReader {
+  public static final int MAX_BATCH_SIZE = 100;
+  private static final long INITIAL_POLL_MILLIS = 250;
+  private static final long MAX_POLL_MILLIS = 2000;
+  private static final int MAX_BATCH_ATTEMPTS = 5;
+  private static final long INITIAL_BATCH_BACKOFF_MILLIS = 50;
+
   private final DynamoDbClient dynamoDbClient;
   private final String tableName;
 
@@ -35,13 +52,107 @@ public class OrchestrationStatusReader {
       throw new NotFoundException("requestId not found");
     }
 
-    Map<String, AttributeValue> item = response.item();
+    return toRecord(requestId, response.item());
+  }
+
+  // Returns the records that exist, keyed by requestId. Keys DynamoDB leaves unprocessed are
+  // retried with backoff; if some remain after the last attempt the caller is asked to retry.
+  public Map<String, OrchestrationRecord> readRecords(Collection<String> requestIds) {
+    if (requestIds.size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " requestIds are allowed");
+    }
+    List<Map<String, AttributeValue>> keys = new ArrayList<>();
+    for (String requestId : new LinkedHashSet<>(requestIds)) {
+      keys.add(Map.of("requestId", AttributeValue.builder().s(requestId).build()));
+    }
+    Map<String, OrchestrationRecord> records = new LinkedHashMap<>();
+    Map<String, KeysAndAttributes> pending = Map.of(tableName, KeysAndAttributes.builder()
+        .keys(keys)
+        .consistentRead(true)
+        .build());
+    long backoffMillis = INITIAL_BATCH_BACKOFF_MILLIS;
+    for (int attempt = 1; !keys.isEmpty(); attempt++) {
+      BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+          .requestItems(pending)
+          .build());
+      List<Map<String, AttributeValue>> items = response.responses() == null
+          ? List.of() : response.responses().getOrDefault(tableName, List.of());
+      for (Map<String, AttributeValue> item : items) {
+        String requestId = readString(item.get("requestId"));
+        records.put(requestId, toRecord(requestId, item));
+      }
+      pending = response.unprocessedKeys();
+      if (pending == null || pending.isEmpty()) {
+        break;
+      }
+      if (attempt == MAX_BATCH_ATTEMPTS) {
+        throw new OverloadedException("Status lookup throttled", 1);
+      }
+      try {
+        Thread.sleep(backoffMillis);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while reading statuses", ex);
+      }
+      backoffMillis *= 2;
+    }
+    return records;
+  }
+
+  private OrchestrationRecord toRecord(String requestId, Map<String, AttributeValue> item) {
     Map<String, String> engine = readStringMap(item.get("engine"));
     Map<String, String> outputs = readStringMap(item.get("outputs"));
+    Map<String, String> shardOutputs =
+        readStringMap(item.get(DynamoDbOrchestrationStore.SHARD_OUTPUTS_ATTRIBUTE));
+    AttributeValue shardCount = item.get(DynamoDbOrchestrationStore.SHARD_COUNT_ATTRIBUTE);
     String finalStatus = readString(item.get("finalStatus"));
     String mergedKey = readString(item.get("mergedKey"));
+    Map<String, Object> summary = readCounts(item.get("summary"));
+    Map<String, Object> resources = readCounts(item.get(ResourceUsage.ATTRIBUTE));
+
+    return new OrchestrationRecord(
+        requestId, engine, outputs, shardOutputs,
+        shardCount == null || shardCount.n() == null ? 0 : Integer.parseInt(shardCount.n()),
+        finalStatus, mergedKey, summary, resources);
+  }
+
+  public String readFinalStatus(String requestId) {
+    GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .projectionExpression("#finalStatus")
+        .expressionAttributeNames(Map.of("#finalStatus", "finalStatus"))
+        .consistentRead(true)
+        .build());
+
+    if (response.item() == null || response.item().isEmpty()) {
+      throw new NotFoundException("requestId not found");
+    }
+    return readString(response.item().get("finalStatus"));
+  }
 
-    return new OrchestrationRecord(requestId, engine, outputs, finalStatus, mergedKey);
+  public OrchestrationRecord awaitFinalStatusChange(String requestId,
+      OrchestrationRecord current,
+      String knownStatus,
+      Duration maxWait) {
+    long deadline = System.nanoTime() + maxWait.toNanos();
+    long delayMillis = INITIAL_POLL_MILLIS;
+    while (true) {
+      long remainingMillis = Duration.ofNanos(deadline - System.nanoTime()).toMillis();
+      if (remainingMillis <= 0) {
+        return current;
+      }
+      try {
+        Thread.sleep(Math.min(delayMillis, remainingMillis));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return current;
+      }
+      if (!Objects.equals(knownStatus, readFinalStatus(requestId))) {
+        return readRecord(requestId);
+      }
+      delayMillis = Math.min(delayMillis * 2, MAX_POLL_MILLIS);
+    }
   }
 
   private Map<String, String> readStringMap(AttributeValue attr) {
@@ -55,6 +166,23 @@ public class OrchestrationStatusReader {
     return values;
   }
 
+  // The merge summary and the per-stage resource counters are nested maps of numbers.
+  private Map<String, Object> readCounts(AttributeValue attr) {
+    if (attr == null || attr.m() == null) {
+      return null;
+    }
+    Map<String, Object> values = new TreeMap<>();
+    for (Map.Entry<String, AttributeValue> entry : attr.m().entrySet()) {
+      AttributeValue value = entry.getValue();
+      if (value.n() != null) {
+        values.put(entry.getKey(), Long.parseLong(value.n()));
+      } else if (value.m() != null) {
+        values.put(entry.getKey(), readCounts(value));
+      }
+    }
+    return values;
+  }
+
   private String readString(AttributeValue attr) {
     if (attr == null) {
       return null;
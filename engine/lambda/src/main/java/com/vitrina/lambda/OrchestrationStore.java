@@ -1,7 +1,23 @@
 package com.vitrina.lambda;
 
+import com.vitrina.common.ResourceUsage;
 import java.util.Map;
 
 public interface OrchestrationStore {
-  void recordStart(String requestId, Map<String, String> serviceStatuses);
+  void recordStart(String requestId,
+      Map<String, String> serviceStatuses,
+      Map<String, String> attributes,
+      ResourceUsage usage);
+
+  // Marks a started request FAILED, for a fan-out that stopped after some messages were sent.
+  void recordFailure(String requestId, String reason);
+
+  // Returns null when no completed result for the payload hash may be reused.
+  ReusableResult findReusableResult(String payloadHash);
+
+  // Records a request as DONE with the merged document and summary of the reused one.
+  void recordReuse(String requestId,
+      ReusableResult result,
+      Map<String, String> attributes,
+      ResourceUsage usage);
 }
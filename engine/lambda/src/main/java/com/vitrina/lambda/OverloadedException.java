@@ -0,0 +1,14 @@
+package com.vitrina.lambda;
+
+public class OverloadedException extends RuntimeException {
+  private final int retryAfterSeconds;
+
+  public OverloadedException(String message, int retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
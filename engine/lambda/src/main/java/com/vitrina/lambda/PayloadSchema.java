@@ -0,0 +1,212 @@
+package com.vitrina.lambda;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// A JSON Schema subset (type, enum, required, properties, additionalProperties, items,
+// min/maxItems, min/maxLength, minimum/maximum) compiled once into a validator tree and
+// evaluated against the already parsed scan payload. Unsupported keywords fail at startup
+// rather than being silently ignored.
+public class PayloadSchema {
+  private static final String BUNDLED_SCHEMA = "payload-schema.json";
+  private static final int MAX_ERRORS = 20;
+  private static final Set<String> TYPES =
+      Set.of("object", "array", "string", "number", "integer", "boolean", "null");
+  private static final Set<String> KEYWORDS = Set.of("$schema", "$id", "title", "description",
+      "type", "enum", "required", "properties", "additionalProperties", "items", "minItems",
+      "maxItems", "minLength", "maxLength", "minimum", "maximum");
+
+  private final Node root;
+
+  private PayloadSchema(Node root) {
+    this.root = root;
+  }
+
+  public static PayloadSchema any() {
+    return new PayloadSchema(null);
+  }
+
+  // An empty file name selects the schema bundled with the function.
+  public static PayloadSchema load(ObjectMapper objectMapper, String schemaFile) {
+    try {
+      if (schemaFile == null || schemaFile.isBlank()) {
+        try (InputStream in =
+            PayloadSchema.class.getClassLoader().getResourceAsStream(BUNDLED_SCHEMA)) {
+          if (in == null) {
+            throw new IllegalStateException("Bundled payload schema not found");
+          }
+          return compile(objectMapper.readTree(in));
+        }
+      }
+      return compile(objectMapper.readTree(Files.readAllBytes(Path.of(schemaFile.trim()))));
+    } catch (IOException ex) {
+      throw new IllegalStateException("Failed to read payload schema", ex);
+    }
+  }
+
+  public static PayloadSchema compile(JsonNode schema) {
+    return new PayloadSchema(compileNode(schema, "#"));
+  }
+
+  // Returns one {field, message} entry per violation, stopping after MAX_ERRORS.
+  public List<Map<String, String>> validate(Object payload) {
+    List<Map<String, String>> errors = new ArrayList<>();
+    if (root != null) {
+      root.validate(payload, "payload", errors);
+    }
+    return errors;
+  }
+
+  private static Node compileNode(JsonNode schema, String location) {
+    if (schema == null || !schema.isObject()) {
+      throw new IllegalStateException("Schema at " + location + " must be an object");
+    }
+    schema.fieldNames().forEachRemaining(keyword -> {
+      if (!KEYWORDS.contains(keyword)) {
+        throw new IllegalStateException(
+            "Unsupported schema keyword " + keyword + " at " + location);
+      }
+    });
+    Node node = new Node();
+    JsonNode type = schema.get("type");
+    if (type != null) {
+      node.types = new HashSet<>();
+      for (JsonNode value : type.isArray() ? type : List.of(type)) {
+        if (!TYPES.contains(value.asText())) {
+          throw new IllegalStateException("Unknown type " + value + " at " + location);
+        }
+        node.types.add(value.asText());
+      }
+    }
+    if (schema.has("enum")) {
+      node.allowed = new ArrayList<>();
+      for (JsonNode value : schema.get("enum")) {
+        node.allowed.add(value.asText());
+      }
+    }
+    if (schema.has("required")) {
+      node.required = new ArrayList<>();
+      for (JsonNode value : schema.get("required")) {
+        node.required.add(value.asText());
+      }
+    }
+    if (schema.has("properties")) {
+      node.properties = new LinkedHashMap<>();
+      schema.get("properties").fields().forEachRemaining(entry -> node.properties.put(
+          entry.getKey(),
+          compileNode(entry.getValue(), location + "/properties/" + entry.getKey())));
+    }
+    node.additionalProperties = schema.path("additionalProperties").asBoolean(true);
+    if (schema.has("items")) {
+      node.items = compileNode(schema.get("items"), location + "/items");
+    }
+    node.minItems = schema.path("minItems").asInt(0);
+    node.maxItems = schema.path("maxItems").asInt(Integer.MAX_VALUE);
+    node.minLength = schema.path("minLength").asInt(0);
+    node.maxLength = schema.path("maxLength").asInt(Integer.MAX_VALUE);
+    node.minimum = schema.has("minimum") ? schema.get("minimum").decimalValue() : null;
+    node.maximum = schema.has("maximum") ? schema.get("maximum").decimalValue() : null;
+    return node;
+  }
+
+  private static final class Node {
+    private Set<String> types;
+    private List<String> allowed;
+    private List<String> required;
+    private Map<String, Node> properties;
+    private boolean additionalProperties;
+    private Node items;
+    private int minItems;
+    private int maxItems;
+    private int minLength;
+    private int maxLength;
+    private BigDecimal minimum;
+    private BigDecimal maximum;
+
+    private void validate(Object value, String field, List<Map<String, String>> errors) {
+      if (errors.size() >= MAX_ERRORS) {
+        return;
+      }
+      if (types != null && types.stream().noneMatch(type -> hasType(value, type))) {
+        error(errors, field, "must be " + String.join(" or ", types.stream().sorted().toList()));
+        return;
+      }
+      if (allowed != null && (value == null || !allowed.contains(value.toString()))) {
+        error(errors, field, "must be one of " + allowed);
+      }
+      if (value instanceof Map<?, ?> map) {
+        validateObject(map, field, errors);
+      } else if (value instanceof List<?> list) {
+        if (list.size() < minItems || list.size() > maxItems) {
+          error(errors, field, "must have between " + minItems + " and " + maxItems + " items");
+        }
+        if (items != null) {
+          for (int i = 0; i < list.size() && errors.size() < MAX_ERRORS; i++) {
+            items.validate(list.get(i), field + "[" + i + "]", errors);
+          }
+        }
+      } else if (value instanceof String text) {
+        if (text.length() < minLength || text.length() > maxLength) {
+          error(errors, field,
+              "length must be between " + minLength + " and " + maxLength);
+        }
+      } else if (value instanceof Number number && (minimum != null || maximum != null)) {
+        BigDecimal decimal = new BigDecimal(number.toString());
+        if ((minimum != null && decimal.compareTo(minimum) < 0)
+            || (maximum != null && decimal.compareTo(maximum) > 0)) {
+          error(errors, field, "must be between " + minimum + " and " + maximum);
+        }
+      }
+    }
+
+    private void validateObject(Map<?, ?> map, String field, List<Map<String, String>> errors) {
+      if (required != null) {
+        for (String name : required) {
+          if (!map.containsKey(name)) {
+            error(errors, field + "." + name, "is required");
+          }
+        }
+      }
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        String name = String.valueOf(entry.getKey());
+        Node property = properties == null ? null : properties.get(name);
+        if (property != null) {
+          property.validate(entry.getValue(), field + "." + name, errors);
+        } else if (!additionalProperties) {
+          error(errors, field + "." + name, "is not allowed");
+        }
+      }
+    }
+
+    private static boolean hasType(Object value, String type) {
+      return switch (type) {
+        case "object" -> value instanceof Map;
+        case "array" -> value instanceof List;
+        case "string" -> value instanceof String;
+        case "number" -> value instanceof Number;
+        case "integer" -> value instanceof Integer || value instanceof Long
+            || value instanceof BigInteger || value instanceof Short;
+        case "boolean" -> value instanceof Boolean;
+        default -> value == null;
+      };
+    }
+
+    private static void error(List<Map<String, String>> errors, String field, String message) {
+      if (errors.size() < MAX_ERRORS) {
+        errors.add(Map.of("field", field, "message", message));
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.vitrina.lambda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits array payloads longer than itemsPerShard into contiguous slices, one message each, so a
+// large scan spreads across worker instances. The shard count is capped at maxShards by growing
+// the slices instead.
+public class PayloadSharder {
+  private final int itemsPerShard;
+  private final int maxShards;
+
+  public PayloadSharder(int itemsPerShard, int maxShards) {
+    if (itemsPerShard < 0) {
+      throw new IllegalStateException("Items per shard must not be negative");
+    }
+    if (maxShards < 1) {
+      throw new IllegalStateException("Max shards must be at least 1");
+    }
+    this.itemsPerShard = itemsPerShard;
+    this.maxShards = maxShards;
+  }
+
+  public static PayloadSharder disabled() {
+    return new PayloadSharder(0, 1);
+  }
+
+  public List<Object> split(Object payload) {
+    if (itemsPerShard == 0 || maxShards == 1
+        || !(payload instanceof List<?> items) || items.size() <= itemsPerShard) {
+      return List.of(payload);
+    }
+    int shardCount = Math.min(maxShards, (items.size() + itemsPerShard - 1) / itemsPerShard);
+    int sliceSize = (items.size() + shardCount - 1) / shardCount;
+    List<Object> shards = new ArrayList<>(shardCount);
+    for (int start = 0; start < items.size(); start += sliceSize) {
+      shards.add(new ArrayList<>(items.subList(start, Math.min(items.size(), start + sliceSize))));
+    }
+    return shards;
+  }
+}
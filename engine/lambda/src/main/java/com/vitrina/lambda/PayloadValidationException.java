@@ -0,0 +1,17 @@
+package com.vitrina.lambda;
+
+import java.util.List;
+import java.util.Map;
+
+public class PayloadValidationException extends IllegalArgumentException {
+  private final List<Map<String, String>> errors;
+
+  public PayloadValidationException(List<Map<String, String>> errors) {
+    super("payload does not match the schema");
+    this.errors = List.copyOf(errors);
+  }
+
+  public List<Map<String, String>> getErrors() {
+    return errors;
+  }
+}
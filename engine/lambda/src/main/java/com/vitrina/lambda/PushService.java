@@ -1,28 +1,65 @@
 package com.vitrina.lambda;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.f4b6a3.ulid.UlidCreator;
+import com.vitrina.common.ResourceUsage;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.common.TraceContext;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class PushService {
   private static final Logger logger = LoggerFactory.getLogger(PushService.class);
+  private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 128;
 
   private final Map<String, MessagePublisher> publishers;
   private final OrchestrationStore orchestrationStore;
   private final ObjectMapper objectMapper;
+  private final AdmissionController admissionController;
+  private final IdempotencyStore idempotencyStore;
+  private final RoutingRules routingRules;
+  private final PayloadSharder payloadSharder;
+  private final PayloadSchema payloadSchema;
+  private final SpanExporter spanExporter;
 
   public PushService(Map<String, MessagePublisher> publishers,
       OrchestrationStore orchestrationStore,
-      ObjectMapper objectMapper) {
+      ObjectMapper objectMapper,
+      AdmissionController admissionController,
+      IdempotencyStore idempotencyStore,
+      RoutingRules routingRules,
+      PayloadSharder payloadSharder,
+      PayloadSchema payloadSchema,
+      SpanExporter spanExporter) {
     this.publishers = publishers;
     this.orchestrationStore = orchestrationStore;
     this.objectMapper = objectMapper;
+    this.admissionController = admissionController;
+    this.idempotencyStore = idempotencyStore;
+    this.routingRules = routingRules;
+    this.payloadSharder = payloadSharder;
+    this.payloadSchema = payloadSchema;
+    this.spanExporter = spanExporter;
   }
 
   public Map<String, Object> push(Map<String, Object> input) {
+    return push(input, null);
+  }
+
+  public Map<String, Object> push(Map<String, Object> input, String idempotencyKey) {
+    long startedAt = System.currentTimeMillis();
     Map<String, Object> safeInput = input == null ? Map.of() : input;
     Object payload = safeInput.containsKey("payload") ? safeInput.get("payload") : safeInput;
     if (payload == null
@@ -30,39 +67,241 @@ public class PushService {
         || (payload instanceof String value && value.trim().isEmpty())) {
       throw new IllegalArgumentException("payload is required");
     }
+    // Rejected here, before admission or any DynamoDB/SQS call, instead of failing in every
+    // worker and retrying into the DLQ.
+    List<Map<String, String>> schemaErrors = payloadSchema.validate(payload);
+    if (!schemaErrors.isEmpty()) {
+      throw new PayloadValidationException(schemaErrors);
+    }
+    Map<String, String> attributes = new HashMap<>();
+    if (safeInput.containsKey("payload")) {
+      String callbackUrl = validateCallbackUrl(safeInput.get("callbackUrl"));
+      if (callbackUrl != null) {
+        attributes.put("callbackUrl", callbackUrl);
+      }
+      Instant deadline = validateDeadline(safeInput.get("deadline"));
+      if (deadline != null) {
+        attributes.put("deadline", deadline.toString());
+      }
+    }
+
+    String key = validateIdempotencyKey(idempotencyKey);
+    String requestHash = canonicalHash(requestFields(payload, attributes));
+    ResourceUsage usage = new ResourceUsage();
+    if (key != null) {
+      // A retry of an accepted scan is answered from the key, without counting as new work.
+      String owner = idempotencyStore.find(key, requestHash);
+      usage.add(ResourceUsage.DYNAMODB_READS, 1);
+      if (owner != null) {
+        return replayed(owner);
+      }
+    }
 
-    String requestId = UUID.randomUUID().toString();
-    Map<String, Object> envelope = new HashMap<>();
-    envelope.put("requestId", requestId);
-    envelope.put("payload", payload);
+    admissionController.admit();
 
-    String message;
-    try {
-      message = objectMapper.writeValueAsString(envelope);
-    } catch (Exception ex) {
-      throw new IllegalArgumentException("Failed to serialize payload", ex);
+    String requestId = UlidCreator.getMonotonicUlid().toString();
+    List<Object> shards = payloadSharder.split(payload);
+    List<String> messages = new ArrayList<>(shards.size());
+    for (int shard = 0; shard < shards.size(); shard++) {
+      Map<String, Object> envelope = new HashMap<>();
+      envelope.put("requestId", requestId);
+      envelope.put("payload", shards.get(shard));
+      if (attributes.containsKey("deadline")) {
+        envelope.put("deadline", attributes.get("deadline"));
+      }
+      if (shards.size() > 1) {
+        envelope.put("shard", shard);
+        envelope.put("shardCount", shards.size());
+      }
+      try {
+        messages.add(objectMapper.writeValueAsString(envelope));
+      } catch (Exception ex) {
+        throw new IllegalArgumentException("Failed to serialize payload", ex);
+      }
     }
 
-    logger.info("Sending message to SQS. requestId={}", requestId);
+    if (key != null) {
+      // Another request may have claimed the key since the lookup.
+      String owner = idempotencyStore.claim(key, requestHash, requestId);
+      usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+      if (!owner.equals(requestId)) {
+        return replayed(owner);
+      }
+    }
+
+    String payloadHash = canonicalHash(payload);
+    attributes.put(DynamoDbOrchestrationStore.PAYLOAD_HASH_ATTRIBUTE, payloadHash);
+    if (messages.size() > 1) {
+      attributes.put(DynamoDbOrchestrationStore.SHARD_COUNT_ATTRIBUTE,
+          Integer.toString(messages.size()));
+    }
+    // Workers continue this trace from the traceparent message attribute.
+    TraceContext trace = TraceContext.newTrace();
+    attributes.put("traceId", trace.getTraceId());
+    Map<String, String> messageAttributes =
+        Map.of(TraceContext.MESSAGE_ATTRIBUTE, trace.toTraceparent());
 
-    Map<String, String> messageIds = new HashMap<>();
+    Map<String, Object> messageIds = new HashMap<>();
     Map<String, String> serviceStatuses = new HashMap<>();
+    boolean recorded = false;
+    int published = 0;
     try {
-      for (String serviceName : publishers.keySet()) {
+      // Callbacks are sent by the merge, so requests that want one always run.
+      ReusableResult reusable = null;
+      if (!attributes.containsKey("callbackUrl")) {
+        reusable = orchestrationStore.findReusableResult(payloadHash);
+        usage.add(ResourceUsage.DYNAMODB_READS, 1);
+      }
+      // The record carries the push counters, so its own write and the sends that follow it are
+      // counted up front.
+      usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+      if (reusable != null) {
+        orchestrationStore.recordReuse(requestId, reusable, attributes, usage);
+        logger.info("Reused completed result. requestId={}, reusedFrom={}",
+            requestId, reusable.getRequestId());
+        Map<String, Object> response = new HashMap<>();
+        response.put("requestId", requestId);
+        response.put("messageIds", Map.of());
+        response.put("reusedFrom", reusable.getRequestId());
+        return response;
+      }
+
+      // The engine map holds only the routed services; workers wait for exactly those.
+      Set<String> services = routingRules.route(payload);
+      Map<String, MessagePublisher> routed = new HashMap<>(publishers);
+      if (services != null) {
+        routed.keySet().retainAll(services);
+      }
+      logger.info("Sending message to SQS. requestId={}, services={}, shards={}",
+          requestId, routed.keySet(), messages.size());
+      for (String serviceName : routed.keySet()) {
         serviceStatuses.put(serviceName, "IN_PROGRESS");
       }
-      orchestrationStore.recordStart(requestId, serviceStatuses);
-      for (Map.Entry<String, MessagePublisher> entry : publishers.entrySet()) {
-        messageIds.put(entry.getKey(), entry.getValue().publish(message));
+      usage.add(ResourceUsage.SQS_SENDS, (long) routed.size() * messages.size());
+      orchestrationStore.recordStart(requestId, serviceStatuses, attributes, usage);
+      recorded = true;
+      for (Map.Entry<String, MessagePublisher> entry : routed.entrySet()) {
+        if (messages.size() == 1) {
+          messageIds.put(entry.getKey(),
+              entry.getValue().publish(messages.get(0), messageAttributes));
+          published++;
+          continue;
+        }
+        List<String> shardMessageIds = new ArrayList<>(messages.size());
+        for (String message : messages) {
+          shardMessageIds.add(entry.getValue().publish(message, messageAttributes));
+          published++;
+        }
+        messageIds.put(entry.getKey(), shardMessageIds);
       }
     } catch (RuntimeException ex) {
-      logger.error("Failed to publish message to SQS. requestId={}", requestId, ex);
+      logger.error("Failed to publish message to SQS. requestId={}, published={}",
+          requestId, published, ex);
+      if (published == 0 && key != null) {
+        // Nothing was sent, so the client's retry can start a fresh orchestration.
+        idempotencyStore.release(key, requestId);
+      }
+      // The record already lists its services as IN_PROGRESS and will never merge, so it is
+      // marked FAILED for status polls. After a partial fan-out the key keeps pointing at it,
+      // since a fresh orchestration would scan some services twice.
+      if (recorded) {
+        try {
+          orchestrationStore.recordFailure(requestId,
+              "Fan-out stopped after " + published + " messages");
+        } catch (RuntimeException recordEx) {
+          ex.addSuppressed(recordEx);
+        }
+      }
       throw ex;
     }
 
+    spanExporter.export("push", trace, null, startedAt, System.currentTimeMillis(), Map.of(
+        "requestId", requestId,
+        "services", String.join(",", messageIds.keySet()),
+        "shards", messages.size()));
+
     Map<String, Object> response = new HashMap<>();
     response.put("requestId", requestId);
     response.put("messageIds", messageIds);
+    response.put("traceId", trace.getTraceId());
+    if (messages.size() > 1) {
+      response.put("shardCount", messages.size());
+    }
+    return response;
+  }
+
+  private Map<String, Object> replayed(String requestId) {
+    logger.info("Replaying scan for Idempotency-Key. requestId={}", requestId);
+    Map<String, Object> response = new HashMap<>();
+    response.put("requestId", requestId);
+    response.put("messageIds", Map.of());
+    response.put("replayed", true);
     return response;
   }
+
+  private String validateIdempotencyKey(String rawValue) {
+    if (rawValue == null || rawValue.isBlank()) {
+      return null;
+    }
+    String value = rawValue.trim();
+    if (value.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+      throw new IllegalArgumentException("Idempotency-Key must be at most "
+          + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+    }
+    return value;
+  }
+
+  private Map<String, Object> requestFields(Object payload, Map<String, String> attributes) {
+    Map<String, Object> request = new HashMap<>(attributes);
+    request.put("payload", payload);
+    return request;
+  }
+
+  // Canonical JSON (sorted map keys) so the same body hashes the same regardless of key order.
+  private String canonicalHash(Object value) {
+    try {
+      byte[] canonical = objectMapper.writer()
+          .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+          .writeValueAsBytes(value);
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+    } catch (Exception ex) {
+      throw new IllegalArgumentException("Failed to hash payload", ex);
+    }
+  }
+
+  private Instant validateDeadline(Object rawValue) {
+    if (rawValue == null || rawValue.toString().isBlank()) {
+      return null;
+    }
+    Instant deadline;
+    try {
+      deadline = Instant.parse(rawValue.toString().trim());
+    } catch (DateTimeParseException ex) {
+      throw new IllegalArgumentException("deadline must be an ISO-8601 instant", ex);
+    }
+    if (!deadline.isAfter(Instant.now())) {
+      throw new IllegalArgumentException("deadline must be in the future");
+    }
+    return deadline;
+  }
+
+  private String validateCallbackUrl(Object rawValue) {
+    if (rawValue == null || rawValue.toString().isBlank()) {
+      return null;
+    }
+    String value = rawValue.toString().trim();
+    URI uri;
+    try {
+      uri = URI.create(value);
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("callbackUrl must be an absolute https URL", ex);
+    }
+    // The merge posts from inside the VPC, so it also refuses hosts that resolve to private
+    // addresses when it delivers.
+    String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+    if (uri.getHost() == null || !scheme.equals("https")) {
+      throw new IllegalArgumentException("callbackUrl must be an absolute https URL");
+    }
+    return value;
+  }
 }
@@ -0,0 +1,173 @@
+package com.vitrina.lambda;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.ScanBy;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+
+// Rejects new scans while any engine queue is backed up: deeper than maxQueueDepth, or holding a
+// message older than maxOldestMessageAge. Depth is cached per container and refreshed at most
+// once per interval, so admission adds no SQS call to most requests. The age is only published
+// as a one-minute CloudWatch metric, so it is refreshed at most once a minute. If a reading
+// fails, requests are admitted on the last known one.
+public class QueueBacklogAdmissionController implements AdmissionController {
+  private static final Logger logger =
+      LoggerFactory.getLogger(QueueBacklogAdmissionController.class);
+  private static final String VISIBLE_MESSAGES = "ApproximateNumberOfMessages";
+  private static final String OLDEST_MESSAGE_AGE = "ApproximateAgeOfOldestMessage";
+  private static final int METRIC_PERIOD_SECONDS = 60;
+  private static final Duration METRIC_LOOKBACK = Duration.ofMinutes(5);
+  private static final int MAX_RETRY_AFTER_SECONDS = 300;
+
+  private final SqsClient sqsClient;
+  private final CloudWatchClient cloudWatchClient;
+  private final List<String> queueUrls;
+  private final long maxQueueDepth;
+  private final long maxOldestMessageAgeSeconds;
+  private final long refreshMillis;
+  private final long ageRefreshMillis;
+  private final int retryAfterSeconds;
+  private final Clock clock;
+  private long backlog;
+  private long refreshedAtMillis = Long.MIN_VALUE;
+  private long oldestMessageAgeSeconds;
+  private long ageRefreshedAtMillis = Long.MIN_VALUE;
+
+  public QueueBacklogAdmissionController(SqsClient sqsClient,
+      CloudWatchClient cloudWatchClient,
+      List<String> queueUrls,
+      long maxQueueDepth,
+      Duration maxOldestMessageAge,
+      Duration refreshInterval,
+      int retryAfterSeconds,
+      Clock clock) {
+    this.sqsClient = Objects.requireNonNull(sqsClient, "sqsClient");
+    this.cloudWatchClient = Objects.requireNonNull(cloudWatchClient, "cloudWatchClient");
+    this.queueUrls = List.copyOf(queueUrls);
+    this.maxQueueDepth = maxQueueDepth;
+    this.maxOldestMessageAgeSeconds = maxOldestMessageAge.toSeconds();
+    this.refreshMillis = refreshInterval.toMillis();
+    this.ageRefreshMillis = Math.max(refreshMillis, METRIC_PERIOD_SECONDS * 1000L);
+    this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    this.clock = Objects.requireNonNull(clock, "clock");
+  }
+
+  // Retry-After scales with how far the tripped signal is over its threshold; the larger wins
+  // when both trip.
+  @Override
+  public void admit() {
+    int retryAfter = 0;
+    if (maxQueueDepth > 0) {
+      long depth = currentBacklog();
+      if (depth > maxQueueDepth) {
+        retryAfter = retryAfter(depth, maxQueueDepth);
+      }
+    }
+    if (maxOldestMessageAgeSeconds > 0) {
+      long age = currentOldestMessageAge();
+      if (age > maxOldestMessageAgeSeconds) {
+        retryAfter = Math.max(retryAfter, retryAfter(age, maxOldestMessageAgeSeconds));
+      }
+    }
+    if (retryAfter > 0) {
+      throw new OverloadedException("engine queues are backed up", retryAfter);
+    }
+  }
+
+  private int retryAfter(long reading, long threshold) {
+    long multiple = (reading + threshold - 1) / threshold;
+    return (int) Math.min(MAX_RETRY_AFTER_SECONDS, retryAfterSeconds * multiple);
+  }
+
+  synchronized long currentBacklog() {
+    long now = clock.millis();
+    if (refreshedAtMillis != Long.MIN_VALUE && now - refreshedAtMillis < refreshMillis) {
+      return backlog;
+    }
+    refreshedAtMillis = now;
+    try {
+      long deepest = 0;
+      for (String queueUrl : queueUrls) {
+        Map<String, String> attributes = sqsClient.getQueueAttributes(
+            GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNamesWithStrings(List.of(VISIBLE_MESSAGES))
+                .build())
+            .attributesAsStrings();
+        deepest = Math.max(deepest, Long.parseLong(attributes.getOrDefault(VISIBLE_MESSAGES, "0")));
+      }
+      backlog = deepest;
+    } catch (RuntimeException ex) {
+      logger.warn("Failed to read queue backlog. Using last reading. backlog={}", backlog, ex);
+    }
+    return backlog;
+  }
+
+  // The newest datapoint of each queue counts; a queue with none in the lookback is idle.
+  synchronized long currentOldestMessageAge() {
+    long now = clock.millis();
+    if (ageRefreshedAtMillis != Long.MIN_VALUE && now - ageRefreshedAtMillis < ageRefreshMillis) {
+      return oldestMessageAgeSeconds;
+    }
+    ageRefreshedAtMillis = now;
+    try {
+      List<MetricDataQuery> queries = new ArrayList<>();
+      for (int i = 0; i < queueUrls.size(); i++) {
+        queries.add(MetricDataQuery.builder()
+            .id("age" + i)
+            .metricStat(MetricStat.builder()
+                .metric(Metric.builder()
+                    .namespace("AWS/SQS")
+                    .metricName(OLDEST_MESSAGE_AGE)
+                    .dimensions(Dimension.builder()
+                        .name("QueueName")
+                        .value(queueName(queueUrls.get(i)))
+                        .build())
+                    .build())
+                .period(METRIC_PERIOD_SECONDS)
+                .stat("Maximum")
+                .build())
+            .build());
+      }
+      Instant end = clock.instant();
+      List<MetricDataResult> results = cloudWatchClient.getMetricData(
+          GetMetricDataRequest.builder()
+              .startTime(end.minus(METRIC_LOOKBACK))
+              .endTime(end)
+              .metricDataQueries(queries)
+              .scanBy(ScanBy.TIMESTAMP_DESCENDING)
+              .build())
+          .metricDataResults();
+      long oldest = 0;
+      for (MetricDataResult result : results) {
+        if (!result.values().isEmpty()) {
+          oldest = Math.max(oldest, result.values().get(0).longValue());
+        }
+      }
+      oldestMessageAgeSeconds = oldest;
+    } catch (RuntimeException ex) {
+      logger.warn("Failed to read oldest message age. Using last reading. ageSeconds={}",
+          oldestMessageAgeSeconds, ex);
+    }
+    return oldestMessageAgeSeconds;
+  }
+
+  private static String queueName(String queueUrl) {
+    return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+  }
+}
@@ -0,0 +1,75 @@
+package com.vitrina.lambda;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ResponseCompressor {
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  private final int minBytes;
+
+  public ResponseCompressor(int minBytes) {
+    if (minBytes < 0) {
+      throw new IllegalStateException("Compression threshold must not be negative");
+    }
+    this.minBytes = minBytes;
+  }
+
+  public String negotiate(String acceptEncoding, int bodyLength) {
+    if (acceptEncoding == null || acceptEncoding.isBlank() || bodyLength < minBytes) {
+      return null;
+    }
+    double wildcard = 0;
+    Map<String, Double> qualities = new HashMap<>();
+    for (String part : acceptEncoding.split(",")) {
+      String[] tokens = part.split(";");
+      String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1.0;
+      for (int i = 1; i < tokens.length; i++) {
+        String param = tokens[i].trim();
+        if (param.startsWith("q=")) {
+          quality = parseQuality(param.substring(2));
+        }
+      }
+      if (coding.equals("*")) {
+        wildcard = quality;
+      } else {
+        qualities.put(coding, quality);
+      }
+    }
+    double gzip = qualities.getOrDefault(GZIP, wildcard);
+    double deflate = qualities.getOrDefault(DEFLATE, wildcard);
+    // Prefer gzip on equal weight; it is the most widely decoded by clients.
+    if (gzip > 0 && gzip >= deflate) {
+      return GZIP;
+    }
+    return deflate > 0 ? DEFLATE : null;
+  }
+
+  public byte[] compress(byte[] body, String encoding) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+    try (OutputStream out = GZIP.equals(encoding)
+        ? new GZIPOutputStream(buffer)
+        : new DeflaterOutputStream(buffer)) {
+      out.write(body);
+    } catch (IOException ex) {
+      throw new IllegalStateException("Failed to compress response", ex);
+    }
+    return buffer.toByteArray();
+  }
+
+  private double parseQuality(String rawValue) {
+    try {
+      return Double.parseDouble(rawValue.trim());
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.vitrina.lambda;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+public class ReusableResult {
+  private final String requestId;
+  private final String mergedKey;
+  private final AttributeValue summary;
+
+  public ReusableResult(String requestId, String mergedKey, AttributeValue summary) {
+    this.requestId = requestId;
+    this.mergedKey = mergedKey;
+    this.summary = summary;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public String getMergedKey() {
+    return mergedKey;
+  }
+
+  public AttributeValue getSummary() {
+    return summary;
+  }
+}
@@ -0,0 +1,84 @@
+package com.vitrina.lambda;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Chooses the services a payload needs. Rules look like
+// "type=sbom:serviceA;source.kind=image:serviceA+serviceB": the first rule whose dotted payload
+// field equals its value wins, and payloads no rule matches fan out to every service.
+public class RoutingRules {
+  private final List<Rule> rules;
+
+  private RoutingRules(List<Rule> rules) {
+    this.rules = rules;
+  }
+
+  public static RoutingRules none() {
+    return new RoutingRules(List.of());
+  }
+
+  public static RoutingRules parse(String spec, Set<String> knownServices) {
+    List<Rule> rules = new ArrayList<>();
+    if (spec == null || spec.isBlank()) {
+      return new RoutingRules(List.of());
+    }
+    for (String rawRule : spec.split(";")) {
+      if (rawRule.isBlank()) {
+        continue;
+      }
+      int equals = rawRule.indexOf('=');
+      int colon = rawRule.lastIndexOf(':');
+      if (equals < 1 || colon < equals + 2 || colon == rawRule.length() - 1) {
+        throw new IllegalStateException("Invalid routing rule: " + rawRule.trim());
+      }
+      Set<String> services = new LinkedHashSet<>();
+      for (String service : rawRule.substring(colon + 1).split("\\+")) {
+        String name = service.trim();
+        if (!knownServices.contains(name)) {
+          throw new IllegalStateException("Routing rule names unknown service: " + name);
+        }
+        services.add(name);
+      }
+      rules.add(new Rule(rawRule.substring(0, equals).trim().split("\\."),
+          rawRule.substring(equals + 1, colon).trim(), Set.copyOf(services)));
+    }
+    return new RoutingRules(List.copyOf(rules));
+  }
+
+  // Returns null when no rule applies, meaning every service.
+  public Set<String> route(Object payload) {
+    for (Rule rule : rules) {
+      if (rule.matches(payload)) {
+        return rule.services;
+      }
+    }
+    return null;
+  }
+
+  private static final class Rule {
+    private final String[] path;
+    private final String value;
+    private final Set<String> services;
+
+    private Rule(String[] path, String value, Set<String> services) {
+      this.path = path;
+      this.value = value;
+      this.services = services;
+    }
+
+    private boolean matches(Object payload) {
+      Object current = payload;
+      for (String segment : path) {
+        if (!(current instanceof Map<?, ?> map)) {
+          return false;
+        }
+        current = map.get(segment);
+      }
+      return current != null && !(current instanceof Map) && !(current instanceof List)
+          && value.equals(current.toString());
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.vitrina.lambda;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Reads individual service outputs from their payload buckets, before the merge exists.
+public class ServiceOutputReader {
+  private final S3Client s3Client;
+  private final Map<String, String> buckets;
+
+  public ServiceOutputReader(S3Client s3Client, Map<String, String> buckets) {
+    this.s3Client = Objects.requireNonNull(s3Client, "s3Client");
+    this.buckets = Map.copyOf(buckets);
+  }
+
+  public static ServiceOutputReader fromSpec(S3Client s3Client, String spec) {
+    Map<String, String> buckets = new TreeMap<>();
+    if (spec != null) {
+      for (String entry : spec.split(",")) {
+        int separator = entry.indexOf('=');
+        if (separator <= 0) {
+          continue;
+        }
+        String service = entry.substring(0, separator).trim();
+        String bucket = entry.substring(separator + 1).trim();
+        if (!service.isEmpty() && !bucket.isEmpty()) {
+          buckets.put(service, bucket);
+        }
+      }
+    }
+    return new ServiceOutputReader(s3Client, buckets);
+  }
+
+  public boolean canRead(String service) {
+    return buckets.containsKey(service);
+  }
+
+  // Returns null when the output is larger than maxBytes, without reading past the limit.
+  public String readOutput(String service, String objectKey, int maxBytes) {
+    String bucket = buckets.get(service);
+    if (bucket == null) {
+      throw new IllegalStateException("No bucket configured for service " + service);
+    }
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(objectKey)
+        .build();
+    try (ResponseInputStream<GetObjectResponse> response = s3Client.getObject(request)) {
+      byte[] body = response.readNBytes(maxBytes + 1);
+      return body.length > maxBytes ? null : new String(body, StandardCharsets.UTF_8);
+    } catch (S3Exception ex) {
+      if (ex.statusCode() == 404) {
+        throw new NotFoundException("service output not found");
+      }
+      throw ex;
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to read service output", ex);
+    }
+  }
+}
@@ -1,9 +1,12 @@
 package com.vitrina.lambda;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
 
@@ -23,9 +26,22 @@ public class SqsPublisher implements MessagePublisher {
 
   @Override
   public String publish(String payload) {
+    return publish(payload, Map.of());
+  }
+
+  @Override
+  public String publish(String payload, Map<String, String> attributes) {
+    Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      messageAttributes.put(entry.getKey(), MessageAttributeValue.builder()
+          .dataType("String")
+          .stringValue(entry.getValue())
+          .build());
+    }
     SendMessageResponse response = sqsClient.sendMessage(SendMessageRequest.builder()
         .queueUrl(queueUrl)
         .messageBody(payload)
+        .messageAttributes(messageAttributes)
         .build());
     logger.info("SQS message sent. messageId={}", response.messageId());
     return response.messageId();
@@ -0,0 +1,66 @@
+package com.vitrina.lambda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.vitrina.common.ResourceUsage;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+class DynamoDbOrchestrationStoreTest {
+  private static final Clock CLOCK =
+      Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+  @Test
+  void reusedRecordCopiesMergedKeyAndSummary() {
+    AttributeValue summary = AttributeValue.builder().m(Map.of(
+        "findings", AttributeValue.builder().n("3").build())).build();
+    PutItemRequest[] written = new PutItemRequest[1];
+    DynamoDbClient dynamoDb = new DynamoDbClient() {
+      @Override
+      public QueryResponse query(QueryRequest request) {
+        assertEquals(DynamoDbOrchestrationStore.PAYLOAD_HASH_INDEX, request.indexName());
+        return QueryResponse.builder().items(List.of(Map.of(
+            "requestId", AttributeValue.builder().s("req-1").build(),
+            "mergedKey", AttributeValue.builder().s("req-1.json").build(),
+            "summary", summary))).build();
+      }
+
+      @Override
+      public PutItemResponse putItem(PutItemRequest request) {
+        written[0] = request;
+        return PutItemResponse.builder().build();
+      }
+
+      @Override
+      public String serviceName() {
+        return "dynamodb";
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    DynamoDbOrchestrationStore store = new DynamoDbOrchestrationStore(
+        dynamoDb, "status-table", 1, Duration.ofMinutes(60), CLOCK);
+
+    ReusableResult result = store.findReusableResult("hash-1");
+    store.recordReuse("req-2", result, Map.of(), new ResourceUsage());
+
+    Map<String, AttributeValue> item = written[0].item();
+    assertEquals("DONE", item.get("finalStatus").s());
+    assertEquals("req-1.json", item.get("mergedKey").s());
+    assertEquals("req-1", item.get("reusedFrom").s());
+    assertEquals(summary, item.get("summary"));
+  }
+}
@@ -1,15 +1,25 @@
 package com.vitrina.lambda;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.ResourceUsage;
+import com.vitrina.common.SpanExporter;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 
 class FunctionConfigTest {
@@ -26,7 +36,7 @@ class FunctionConfigTest {
     CapturingStore store = new CapturingStore();
     ObjectMapper objectMapper = new ObjectMapper();
 
-    PushService pushService = new PushService(publishers, store, objectMapper);
+    PushService pushService = newPushService(publishers, store, objectMapper);
     Function<Map<String, Object>, Map<String, Object>> fn = pushService::push;
     Map<String, Object> response = fn.apply(Map.of("payload", Map.of("message", "hello")));
     @SuppressWarnings("unchecked")
@@ -45,6 +55,32 @@ class FunctionConfigTest {
     assertEquals(Map.of("message", "hello"), envelope.get("payload"));
   }
 
+  @Test
+  void pushToSqsCarriesTraceparentAttribute() {
+    Map<String, String> attributes = new HashMap<>();
+    MessagePublisher publisher = new MessagePublisher() {
+      @Override
+      public String publish(String payload) {
+        throw new AssertionError("attributes must be passed");
+      }
+
+      @Override
+      public String publish(String payload, Map<String, String> messageAttributes) {
+        attributes.putAll(messageAttributes);
+        return "msg-123";
+      }
+    };
+    CapturingStore store = new CapturingStore();
+    PushService pushService =
+        newPushService(Map.of("serviceA", publisher), store, new ObjectMapper());
+
+    Map<String, Object> response = pushService.push(Map.of("payload", Map.of("a", 1)));
+
+    String traceId = (String) response.get("traceId");
+    assertEquals(traceId, store.attributes.get("traceId"));
+    assertTrue(attributes.get("traceparent").matches("00-" + traceId + "-[0-9a-f]{16}-01"));
+  }
+
   @Test
   void pushToSqsRequiresPayload() {
     Map<String, MessagePublisher> publishers = Map.of(
@@ -53,20 +89,329 @@ class FunctionConfigTest {
     CapturingStore store = new CapturingStore();
     ObjectMapper objectMapper = new ObjectMapper();
 
-    PushService pushService = new PushService(publishers, store, objectMapper);
+    PushService pushService = newPushService(publishers, store, objectMapper);
     Function<Map<String, Object>, Map<String, Object>> fn = pushService::push;
 
     assertThrows(IllegalArgumentException.class, () -> fn.apply(Map.of()));
   }
 
-  private static final class CapturingStore implements OrchestrationStore {
-    private String requestId;
-    private Map<String, String> statuses = new HashMap<>();
+  @Test
+  void pushToSqsStoresCallbackUrl() {
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> "msg-123");
+    CapturingStore store = new CapturingStore();
+    PushService pushService = newPushService(publishers, store, new ObjectMapper());
+
+    pushService.push(Map.of(
+        "payload", Map.of("message", "hello"),
+        "callbackUrl", "https://hooks.example.com/vitrina"));
+
+    assertEquals("https://hooks.example.com/vitrina", store.attributes.get("callbackUrl"));
+    assertThrows(IllegalArgumentException.class, () -> pushService.push(Map.of(
+        "payload", Map.of("message", "hello"),
+        "callbackUrl", "ftp://hooks.example.com/vitrina")));
+    assertThrows(IllegalArgumentException.class, () -> pushService.push(Map.of(
+        "payload", Map.of("message", "hello"),
+        "callbackUrl", "http://hooks.example.com/vitrina")));
+  }
+
+  @Test
+  void pushToSqsCarriesDeadlineInEnvelope() throws Exception {
+    AtomicReference<String> messageBody = new AtomicReference<>();
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> {
+      messageBody.set(payload);
+      return "msg-123";
+    });
+    CapturingStore store = new CapturingStore();
+    ObjectMapper objectMapper = new ObjectMapper();
+    PushService pushService = newPushService(publishers, store, objectMapper);
+    String deadline = Instant.now().plusSeconds(300).toString();
+
+    pushService.push(Map.of("payload", Map.of("message", "hello"), "deadline", deadline));
+
+    Map<String, Object> envelope = objectMapper.readValue(
+        messageBody.get(), new TypeReference<>() {});
+    assertEquals(deadline, envelope.get("deadline"));
+    assertEquals(deadline, store.attributes.get("deadline"));
+    assertThrows(IllegalArgumentException.class, () -> pushService.push(Map.of(
+        "payload", Map.of("message", "hello"),
+        "deadline", Instant.now().minusSeconds(1).toString())));
+    assertThrows(IllegalArgumentException.class, () -> pushService.push(Map.of(
+        "payload", Map.of("message", "hello"),
+        "deadline", "tomorrow")));
+  }
+
+  @Test
+  void pushWithIdempotencyKeyFansOutOnce() {
+    List<String> published = new ArrayList<>();
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> {
+      published.add(payload);
+      return "msg-" + published.size();
+    });
+    CapturingStore store = new CapturingStore();
+    PushService pushService = newPushService(publishers, store, new ObjectMapper());
+
+    Map<String, Object> first = pushService.push(
+        Map.of("payload", Map.of("a", 1, "b", 2)), "key-1");
+    Map<String, Object> retry = pushService.push(
+        Map.of("payload", Map.of("b", 2, "a", 1)), "key-1");
+
+    assertEquals(first.get("requestId"), retry.get("requestId"));
+    assertEquals(true, retry.get("replayed"));
+    assertEquals(1, published.size());
+    assertThrows(IdempotencyKeyConflictException.class, () -> pushService.push(
+        Map.of("payload", Map.of("a", 3)), "key-1"));
+  }
+
+  @Test
+  void idempotencyKeyIsKeptOnceAnyMessageWasPublished() {
+    List<String> published = new ArrayList<>();
+    AtomicInteger admitted = new AtomicInteger();
+    // Whichever service is sent to second fails.
+    MessagePublisher publisher = payload -> {
+      if (published.size() == 1) {
+        throw new IllegalStateException("sqs unavailable");
+      }
+      published.add(payload);
+      return "msg-" + published.size();
+    };
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", publisher, "serviceB", publisher);
+    CapturingStore store = new CapturingStore();
+    PushService pushService = new PushService(publishers, store, new ObjectMapper(),
+        admitted::incrementAndGet, new InMemoryIdempotencyStore(), RoutingRules.none(),
+        PayloadSharder.disabled(), PayloadSchema.any(),
+        new SpanExporter(new ObjectMapper(), "", "pushToSqs"));
+
+    assertThrows(IllegalStateException.class,
+        () -> pushService.push(Map.of("payload", Map.of("a", 1)), "key-1"));
+    Map<String, Object> retry = pushService.push(Map.of("payload", Map.of("a", 1)), "key-1");
+
+    assertEquals(store.requestId, retry.get("requestId"));
+    assertEquals(true, retry.get("replayed"));
+    assertNotNull(store.failureReason);
+    assertEquals(1, published.size());
+    assertEquals(1, admitted.get());
+  }
+
+  @Test
+  void failedFirstPublishReleasesTheKeyAndFailsTheRecord() {
+    AtomicInteger failures = new AtomicInteger(1);
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> {
+      if (failures.getAndDecrement() > 0) {
+        throw new IllegalStateException("sqs unavailable");
+      }
+      return "msg-a";
+    });
+    CapturingStore store = new CapturingStore();
+    PushService pushService = newPushService(publishers, store, new ObjectMapper());
+
+    assertThrows(IllegalStateException.class,
+        () -> pushService.push(Map.of("payload", Map.of("a", 1)), "key-1"));
+    String failedRequestId = store.requestId;
+    Map<String, Object> retry = pushService.push(Map.of("payload", Map.of("a", 1)), "key-1");
+
+    assertEquals(failedRequestId, store.failedRequestId);
+    assertEquals("Fan-out stopped after 0 messages", store.failureReason);
+    assertEquals(Map.of("serviceA", "msg-a"), retry.get("messageIds"));
+    assertNotEquals(failedRequestId, retry.get("requestId"));
+  }
+
+  @Test
+  void pushReusesFreshResultForIdenticalPayload() {
+    List<String> published = new ArrayList<>();
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> {
+      published.add(payload);
+      return "msg-1";
+    });
+    Map<String, String> reused = new HashMap<>();
+    CapturingStore store = new CapturingStore() {
+      @Override
+      public ReusableResult findReusableResult(String payloadHash) {
+        return payloadHash.equals(attributes.get("payloadHash"))
+            ? new ReusableResult(requestId, "first.json", null) : null;
+      }
+
+      @Override
+      public void recordReuse(String requestId, ReusableResult result,
+          Map<String, String> attributes, ResourceUsage usage) {
+        reused.put(requestId, result.getMergedKey());
+      }
+    };
+    PushService pushService = newPushService(publishers, store, new ObjectMapper());
+
+    Map<String, Object> first = pushService.push(Map.of("payload", Map.of("a", 1, "b", 2)));
+    Map<String, Object> second = pushService.push(Map.of("payload", Map.of("b", 2, "a", 1)));
+
+    assertEquals(1, published.size());
+    assertEquals(first.get("requestId"), second.get("reusedFrom"));
+    assertEquals("first.json", reused.get((String) second.get("requestId")));
+  }
+
+  @Test
+  void pushRoutesPayloadToMatchingServicesOnly() {
+    List<String> published = new ArrayList<>();
+    Map<String, MessagePublisher> publishers = Map.of(
+        "serviceA", payload -> {
+          published.add("serviceA");
+          return "msg-a";
+        },
+        "serviceB", payload -> {
+          published.add("serviceB");
+          return "msg-b";
+        });
+    CapturingStore store = new CapturingStore();
+    RoutingRules rules = RoutingRules.parse(
+        "type=sbom:serviceB;source.kind=image:serviceA+serviceB", publishers.keySet());
+    PushService pushService = newPushService(publishers, store, new ObjectMapper(), rules);
+
+    Map<String, Object> response = pushService.push(Map.of("payload", Map.of("type", "sbom")));
+
+    assertEquals(List.of("serviceB"), published);
+    assertEquals(Map.of("serviceB", "msg-b"), response.get("messageIds"));
+    assertEquals(Map.of("serviceB", "IN_PROGRESS"), store.statuses);
+
+    published.clear();
+    pushService.push(Map.of("payload", Map.of("type", "other")));
+    assertEquals(2, published.size());
+    assertThrows(IllegalStateException.class,
+        () -> RoutingRules.parse("type=sbom:serviceC", publishers.keySet()));
+  }
+
+  @Test
+  void pushSplitsLargeArrayPayloadIntoShards() throws Exception {
+    List<String> published = new ArrayList<>();
+    Map<String, MessagePublisher> publishers = Map.of("serviceA", payload -> {
+      published.add(payload);
+      return "msg-" + published.size();
+    });
+    CapturingStore store = new CapturingStore();
+    ObjectMapper objectMapper = new ObjectMapper();
+    PushService pushService = newPushService(publishers, store, objectMapper,
+        RoutingRules.none(), new PayloadSharder(2, 3));
+
+    Map<String, Object> response =
+        pushService.push(Map.of("payload", List.of(1, 2, 3, 4, 5, 6, 7)));
+
+    assertEquals(Map.of("serviceA", List.of("msg-1", "msg-2", "msg-3")),
+        response.get("messageIds"));
+    assertEquals("3", store.attributes.get("shardCount"));
+    assertEquals(Map.of("sqsSends", 3L, "dynamoDbReads", 1L, "dynamoDbWrites", 1L),
+        store.resources);
+    List<Object> items = new ArrayList<>();
+    for (int shard = 0; shard < published.size(); shard++) {
+      Map<String, Object> envelope = objectMapper.readValue(
+          published.get(shard), new TypeReference<>() {});
+      assertEquals(shard, envelope.get("shard"));
+      assertEquals(3, envelope.get("shardCount"));
+      items.addAll((List<?>) envelope.get("payload"));
+    }
+    assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), items);
+
+    published.clear();
+    pushService.push(Map.of("payload", List.of(1, 2)));
+    assertEquals(1, published.size());
+  }
+
+  @Test
+  void bundledSchemaAcceptsEveryPayloadShapeTheWorkersHandle() {
+    PayloadSchema schema = PayloadSchema.load(new ObjectMapper(), "");
+
+    for (Object payload : List.of("plain text", 42, 1.5, true, List.of(1, 2),
+        Map.of("serviceName", "serviceA"))) {
+      assertEquals(List.of(), schema.validate(payload), String.valueOf(payload));
+    }
+    assertEquals(List.of("payload.findings[0].fingerprint"),
+        schema.validate(Map.of("findings", List.of(Map.of("fingerprint", ""))))
+            .stream().map(error -> error.get("field")).collect(Collectors.toList()));
+
+    List<String> published = new ArrayList<>();
+    PushService pushService = new PushService(Map.of("serviceA", payload -> {
+      published.add(payload);
+      return "msg-1";
+    }), new CapturingStore(), new ObjectMapper(), () -> { }, new InMemoryIdempotencyStore(),
+        RoutingRules.none(), PayloadSharder.disabled(), schema,
+        new SpanExporter(new ObjectMapper(), "", "pushToSqs"));
+    pushService.push(Map.of("payload", "scan this text"));
+    assertEquals(1, published.size());
+  }
+
+  @Test
+  void payloadSchemaReportsEveryFieldError() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    PayloadSchema schema = PayloadSchema.compile(objectMapper.readTree("{\"type\":\"object\","
+        + "\"required\":[\"target\"],\"additionalProperties\":false,\"properties\":{"
+        + "\"target\":{\"type\":\"string\",\"maxLength\":5},"
+        + "\"depth\":{\"type\":\"integer\",\"minimum\":1,\"maximum\":3},"
+        + "\"mode\":{\"enum\":[\"fast\",\"full\"]}}}"));
+
+    assertEquals(List.of(), schema.validate(Map.of("target", "repo", "depth", 2)));
+    List<Map<String, String>> errors = schema.validate(
+        Map.of("depth", 4, "mode", "slow", "extra", true));
+    assertEquals(Set.of("payload.target", "payload.depth", "payload.mode", "payload.extra"),
+        errors.stream().map(error -> error.get("field")).collect(Collectors.toSet()));
+    assertEquals(List.of(Map.of("field", "payload", "message", "must be object")),
+        schema.validate(List.of(1)));
+    assertThrows(IllegalStateException.class, () -> PayloadSchema.compile(
+        objectMapper.readTree("{\"pattern\":\"^a\"}")));
+  }
+
+  private static PushService newPushService(Map<String, MessagePublisher> publishers,
+      OrchestrationStore store,
+      ObjectMapper objectMapper) {
+    return newPushService(publishers, store, objectMapper, RoutingRules.none());
+  }
+
+  private static PushService newPushService(Map<String, MessagePublisher> publishers,
+      OrchestrationStore store,
+      ObjectMapper objectMapper,
+      RoutingRules routingRules) {
+    return newPushService(publishers, store, objectMapper, routingRules,
+        PayloadSharder.disabled());
+  }
+
+  private static PushService newPushService(Map<String, MessagePublisher> publishers,
+      OrchestrationStore store,
+      ObjectMapper objectMapper,
+      RoutingRules routingRules,
+      PayloadSharder payloadSharder) {
+    return new PushService(publishers, store, objectMapper, () -> { },
+        new InMemoryIdempotencyStore(), routingRules, payloadSharder, PayloadSchema.any(),
+        new SpanExporter(objectMapper, "", "pushToSqs"));
+  }
+
+  private static class CapturingStore implements OrchestrationStore {
+    String requestId;
+    Map<String, String> statuses = new HashMap<>();
+    Map<String, String> attributes = new HashMap<>();
+    Map<String, Long> resources = new HashMap<>();
+    String failedRequestId;
+    String failureReason;
 
     @Override
-    public void recordStart(String requestId, Map<String, String> serviceStatuses) {
+    public void recordStart(String requestId,
+        Map<String, String> serviceStatuses,
+        Map<String, String> attributes,
+        ResourceUsage usage) {
       this.requestId = requestId;
       this.statuses = new HashMap<>(serviceStatuses);
+      this.attributes = new HashMap<>(attributes);
+      this.resources = new HashMap<>(usage.getCounters());
+    }
+
+    @Override
+    public void recordFailure(String requestId, String reason) {
+      this.failedRequestId = requestId;
+      this.failureReason = reason;
+    }
+
+    @Override
+    public ReusableResult findReusableResult(String payloadHash) {
+      return null;
+    }
+
+    @Override
+    public void recordReuse(String requestId, ReusableResult result,
+        Map<String, String> attributes, ResourceUsage usage) {
+      throw new UnsupportedOperationException("No result to reuse");
     }
   }
 }
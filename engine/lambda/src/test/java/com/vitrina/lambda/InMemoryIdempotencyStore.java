@@ -0,0 +1,40 @@
+package com.vitrina.lambda;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class InMemoryIdempotencyStore implements IdempotencyStore {
+  private final Map<String, String[]> keys = new HashMap<>();
+
+  @Override
+  public synchronized String find(String idempotencyKey, String requestHash) {
+    String[] existing = keys.get(idempotencyKey);
+    if (existing == null) {
+      return null;
+    }
+    if (!existing[0].equals(requestHash)) {
+      throw new IdempotencyKeyConflictException("Idempotency-Key reuse with different payload");
+    }
+    return existing[1];
+  }
+
+  @Override
+  public synchronized String claim(String idempotencyKey, String requestHash, String requestId) {
+    String[] existing = keys.putIfAbsent(idempotencyKey, new String[] {requestHash, requestId});
+    if (existing == null) {
+      return requestId;
+    }
+    if (!existing[0].equals(requestHash)) {
+      throw new IdempotencyKeyConflictException("Idempotency-Key reuse with different payload");
+    }
+    return existing[1];
+  }
+
+  @Override
+  public synchronized void release(String idempotencyKey, String requestId) {
+    String[] existing = keys.get(idempotencyKey);
+    if (existing != null && existing[1].equals(requestId)) {
+      keys.remove(idempotencyKey);
+    }
+  }
+}
@@ -0,0 +1,549 @@
+package com.vitrina.lambda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.ResourceUsage;
+import com.vitrina.common.SpanExporter;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class OrchestrationApiHandlerTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final FakeDynamoDb dynamoDb = new FakeDynamoDb();
+  private final FakeS3 s3 = new FakeS3();
+
+  @Test
+  void cursorPagesFollowByteBudgetUntilExhausted() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(5, 300));
+    OrchestrationApiHandler handler = newHandler();
+
+    List<JsonNode> seen = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      Map<String, String> query = new HashMap<>();
+      query.put("maxBytes", "1800");
+      if (cursor != null) {
+        query.put("cursor", cursor);
+      }
+      JsonNode body = bodyOf(handler.handle(findingsEvent("req-1", query)), 200);
+      assertEquals(5, body.get("total").asInt());
+      assertTrue(body.get("items").size() <= 2);
+      body.get("items").forEach(seen::add);
+      cursor = body.get("nextCursor").isNull() ? null : body.get("nextCursor").asText();
+      pages++;
+    } while (cursor != null && pages < 10);
+
+    assertEquals(3, pages);
+    assertEquals(5, seen.size());
+    for (int i = 0; i < seen.size(); i++) {
+      assertEquals(i, seen.get(i).get("index").asInt());
+    }
+  }
+
+  @Test
+  void pageParametersStillWorkAndExposeCursor() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(5, 10));
+    OrchestrationApiHandler handler = newHandler();
+
+    JsonNode body = bodyOf(handler.handle(findingsEvent("req-1", Map.of("page", "1", "size", "2"))), 200);
+
+    assertEquals(1, body.get("page").asInt());
+    assertEquals(2, body.get("size").asInt());
+    assertEquals(2, body.get("items").size());
+    assertNotNull(body.get("nextCursor").asText(null));
+
+    JsonNode next = bodyOf(handler.handle(findingsEvent("req-1",
+        Map.of("cursor", body.get("nextCursor").asText(), "size", "10"))), 200);
+    assertEquals(2, next.get("offset").asInt());
+    assertEquals(3, next.get("items").size());
+    assertTrue(next.get("nextCursor").isNull());
+  }
+
+  @Test
+  void filtersAndFieldsApplyAcrossCursorPages() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(6, 10));
+    OrchestrationApiHandler handler = newHandler();
+
+    JsonNode first = bodyOf(handler.handle(findingsEvent("req-1",
+        Map.of("where", "index>=2,index!=3", "fields", "index", "size", "2"))), 200);
+
+    assertEquals(3, first.get("total").asInt());
+    assertEquals(objectMapper.readTree("[{\"index\":2},{\"index\":4}]"), first.get("items"));
+    JsonNode next = bodyOf(handler.handle(findingsEvent("req-1", Map.of(
+        "where", "index>=2,index!=3", "fields", "index",
+        "cursor", first.get("nextCursor").asText()))), 200);
+    assertEquals(objectMapper.readTree("[{\"index\":5}]"), next.get("items"));
+    assertTrue(next.get("nextCursor").isNull());
+
+    Map<String, Object> invalid = handler.handle(findingsEvent("req-1", Map.of("where", "index")));
+    assertEquals(400, invalid.get("statusCode"));
+  }
+
+  @Test
+  void cursorForReplacedDocumentIsRejected() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(5, 10));
+    OrchestrationApiHandler handler = newHandler();
+    JsonNode first = bodyOf(handler.handle(findingsEvent("req-1", Map.of("size", "2"))), 200);
+
+    s3.put("req-1.json", "\"etag-2\"", mergedDocument(5, 10));
+    Map<String, Object> response = handler.handle(findingsEvent("req-1",
+        Map.of("cursor", first.get("nextCursor").asText())));
+
+    assertEquals(400, response.get("statusCode"));
+  }
+
+  @Test
+  void malformedCursorIsRejected() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(1, 10));
+
+    Map<String, Object> response = newHandler().handle(findingsEvent("req-1", Map.of("cursor", "%%%")));
+
+    assertEquals(400, response.get("statusCode"));
+  }
+
+  @Test
+  void largeResponsesAreGzipEncodedWhenAccepted() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(20, 500));
+    Map<String, Object> event = findingsEvent("req-1", Map.of("size", "20"));
+    event.put("headers", Map.of("accept-encoding", "br;q=1.0, gzip;q=0.8, deflate;q=0.5"));
+
+    Map<String, Object> response = newHandler().handle(event);
+
+    assertEquals(200, response.get("statusCode"));
+    assertEquals(true, response.get("isBase64Encoded"));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> headers = (Map<String, Object>) response.get("headers");
+    assertEquals("gzip", headers.get("Content-Encoding"));
+    byte[] compressed = Base64.getDecoder().decode(response.get("body").toString());
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      JsonNode body = objectMapper.readTree(in);
+      assertEquals(20, body.get("items").size());
+    }
+  }
+
+  @Test
+  void smallOrUnacceptedResponsesStayPlain() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    s3.put("req-1.json", "\"etag-1\"", mergedDocument(20, 500));
+    Map<String, Object> identity = findingsEvent("req-1", Map.of("size", "20"));
+    identity.put("headers", Map.of("Accept-Encoding", "gzip;q=0, identity"));
+    Map<String, Object> small = statusEvent("req-1");
+    small.put("headers", Map.of("Accept-Encoding", "gzip"));
+
+    assertEquals(false, newHandler().handle(identity).get("isBase64Encoded"));
+    assertEquals(false, newHandler().handle(small).get("isBase64Encoded"));
+  }
+
+  @Test
+  void statusLongPollReturnsOnceFinalStatusChanges() throws Exception {
+    dynamoDb.put("req-1", "MERGING", null);
+    dynamoDb.changeAfterReads("req-1", 3, "DONE", "req-1.json");
+    Map<String, Object> event = statusEvent("req-1");
+    event.put("queryStringParameters", Map.of("waitSeconds", "5"));
+
+    long started = System.nanoTime();
+    JsonNode body = bodyOf(newHandler().handle(event), 200);
+
+    assertEquals("DONE", body.get("finalStatus").asText());
+    assertEquals("req-1.json", body.get("mergedKey").asText());
+    assertTrue(System.nanoTime() - started < 5_000_000_000L);
+  }
+
+  @Test
+  void statusLongPollReturnsImmediatelyWhenKnownStatusIsStale() throws Exception {
+    dynamoDb.put("req-1", "MERGING", null);
+    Map<String, Object> event = statusEvent("req-1");
+    event.put("queryStringParameters", Map.of("waitSeconds", "5", "lastStatus", "PENDING"));
+
+    JsonNode body = bodyOf(newHandler().handle(event), 200);
+
+    assertEquals("MERGING", body.get("finalStatus").asText());
+    assertEquals(1, dynamoDb.reads);
+  }
+
+  @Test
+  void statusReturnsStoredSummaryWithoutReadingFindings() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    dynamoDb.putAttribute("req-1", "summary", AttributeValue.builder().m(Map.of(
+        "findings", AttributeValue.builder().n("3").build(),
+        "bySeverity", AttributeValue.builder().m(Map.of(
+            "high", AttributeValue.builder().n("2").build())).build())).build());
+
+    JsonNode body = bodyOf(newHandler().handle(statusEvent("req-1")), 200);
+
+    assertEquals(objectMapper.readTree("{\"bySeverity\":{\"high\":2},\"findings\":3}"),
+        body.get("summary"));
+  }
+
+  @Test
+  void statusReturnsResourceCountersPerStage() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    dynamoDb.putAttribute("req-1", "resources", AttributeValue.builder().m(Map.of(
+        "push", AttributeValue.builder().m(Map.of(
+            "sqsSends", AttributeValue.builder().n("2").build())).build(),
+        "serviceA", AttributeValue.builder().m(Map.of(
+            "s3BytesWritten", AttributeValue.builder().n("512").build(),
+            "redeliveries", AttributeValue.builder().n("1").build())).build(),
+        "merge", AttributeValue.builder().m(Map.of()).build())).build());
+
+    JsonNode body = bodyOf(newHandler().handle(statusEvent("req-1")), 200);
+
+    assertEquals(objectMapper.readTree("{\"merge\":{},\"push\":{\"sqsSends\":2},"
+        + "\"serviceA\":{\"redeliveries\":1,\"s3BytesWritten\":512}}"),
+        body.get("resources"));
+  }
+
+  @Test
+  void batchStatusRetriesUnprocessedKeysAndReportsMissingIds() throws Exception {
+    dynamoDb.put("req-1", "DONE", "req-1.json");
+    dynamoDb.put("req-2", "MERGING", null);
+    dynamoDb.unprocessedOnFirstBatch = "req-2";
+    Map<String, Object> event = new HashMap<>();
+    event.put("httpMethod", "POST");
+    event.put("path", "/status/batch");
+    event.put("body", "{\"requestIds\":[\"req-1\",\"req-2\",\"req-3\",\"req-1\"]}");
+
+    JsonNode body = bodyOf(newHandler().handle(event), 200);
+
+    assertEquals(2, dynamoDb.batchReads);
+    assertEquals(2, body.get("statuses").size());
+    assertEquals("req-1", body.get("statuses").get(0).get("requestId").asText());
+    assertEquals("req-1.json", body.get("statuses").get(0).get("mergedKey").asText());
+    assertEquals("MERGING", body.get("statuses").get(1).get("finalStatus").asText());
+    assertEquals(objectMapper.readTree("[\"req-3\"]"), body.get("notFound"));
+
+    event.put("body", "{\"requestIds\":[]}");
+    assertEquals(400, newHandler().handle(event).get("statusCode"));
+  }
+
+  @Test
+  void partialFindingsServeFinishedServicesBeforeMerge() throws Exception {
+    dynamoDb.put("req-1", "PENDING", null);
+    dynamoDb.putEngine("req-1", "serviceA", "DONE", "serviceA/req-1.json");
+    dynamoDb.putEngine("req-1", "serviceB", "IN_PROGRESS", null);
+    s3.put("serviceA/req-1.json", "\"etag-a\"", "{\"requestId\":\"req-1\",\"payload\":{\"n\":1}}");
+    OrchestrationApiHandler handler = newHandler();
+
+    JsonNode partial = bodyOf(
+        handler.handle(findingsEvent("req-1", Map.of("partial", "true"))), 200);
+
+    assertTrue(partial.get("partial").asBoolean());
+    assertEquals("PENDING", partial.get("finalStatus").asText());
+    assertEquals("[\"serviceA\"]", partial.get("completedServices").toString());
+    assertEquals("[\"serviceB\"]", partial.get("pendingServices").toString());
+    assertEquals(1, partial.get("items").get(0).get("payload").get("n").asInt());
+    bodyOf(handler.handle(findingsEvent("req-1", Map.of())), 202);
+  }
+
+  @Test
+  void partialFindingsServeFinishedShardsInMergeOrder() throws Exception {
+    dynamoDb.put("req-1", "PENDING", null);
+    dynamoDb.putEngine("req-1", "serviceA", "DONE", null);
+    dynamoDb.putEngine("req-1", "serviceB", "IN_PROGRESS", null);
+    dynamoDb.putAttribute("req-1", "shardCount", AttributeValue.builder().n("2").build());
+    dynamoDb.putAttribute("req-1", "shardOutputs", AttributeValue.builder().m(Map.of(
+        "serviceA/0", AttributeValue.builder().s("serviceA/req-1-0.json").build(),
+        "serviceA/1", AttributeValue.builder().s("serviceA/req-1-1.json").build(),
+        "serviceB/1", AttributeValue.builder().s("serviceB/req-1-1.json").build())).build());
+    s3.put("serviceA/req-1-0.json", "\"etag-a0\"", "{\"shard\":\"a0\"}");
+    s3.put("serviceA/req-1-1.json", "\"etag-a1\"", "{\"shard\":\"a1\"}");
+    s3.put("serviceB/req-1-1.json", "\"etag-b1\"", "{\"shard\":\"b1\"}");
+
+    JsonNode partial = bodyOf(newHandler().handle(
+        findingsEvent("req-1", Map.of("partial", "true"))), 200);
+
+    assertEquals("[\"serviceA\"]", partial.get("completedServices").toString());
+    assertEquals("[\"serviceB\"]", partial.get("pendingServices").toString());
+    assertEquals("[{\"shard\":\"a0\"},{\"shard\":\"a1\"},{\"shard\":\"b1\"}]",
+        partial.get("items").toString());
+    JsonNode last = bodyOf(newHandler().handle(findingsEvent("req-1", Map.of(
+        "partial", "true", "where", "shard=b1", "size", "1"))), 200);
+    assertEquals(1, last.get("items").size());
+    assertTrue(last.get("nextCursor").isNull());
+  }
+
+  @Test
+  void partialFindingsArePagedWithCursorsAndFilters() throws Exception {
+    dynamoDb.put("req-1", "PENDING", null);
+    dynamoDb.putEngine("req-1", "serviceA", "DONE", "serviceA/req-1.json");
+    dynamoDb.putEngine("req-1", "serviceB", "DONE", "serviceB/req-1.json");
+    s3.put("serviceA/req-1.json", "\"etag-a\"", "{\"payload\":{\"n\":1}}");
+    s3.put("serviceB/req-1.json", "\"etag-b\"", "{\"payload\":{\"n\":2}}");
+    OrchestrationApiHandler handler = newHandler();
+
+    JsonNode first = bodyOf(handler.handle(
+        findingsEvent("req-1", Map.of("partial", "true", "size", "1"))), 200);
+    assertEquals("[{\"payload\":{\"n\":1}}]", first.get("items").toString());
+    JsonNode second = bodyOf(handler.handle(findingsEvent("req-1", Map.of(
+        "partial", "true", "cursor", first.get("nextCursor").asText(), "fields", "payload.n"))),
+        200);
+    assertEquals("[{\"payload\":{\"n\":2}}]", second.get("items").toString());
+    assertTrue(second.get("nextCursor").isNull());
+
+    JsonNode filtered = bodyOf(handler.handle(
+        findingsEvent("req-1", Map.of("partial", "true", "where", "payload.n>1"))), 200);
+    assertEquals(1, filtered.get("items").size());
+    assertEquals(2, filtered.get("items").get(0).path("payload").path("n").asInt());
+  }
+
+  @Test
+  void scanIsRejectedWithRetryAfterWhenOverloaded() throws Exception {
+    OrchestrationApiHandler handler = newHandler(() -> {
+      throw new OverloadedException("engine queues are backed up", 60);
+    });
+    Map<String, Object> event = new HashMap<>();
+    event.put("httpMethod", "POST");
+    event.put("path", "/scan");
+    event.put("body", "{\"payload\":{\"message\":\"hello\"}}");
+
+    Map<String, Object> response = handler.handle(event);
+
+    bodyOf(response, 429);
+    assertEquals("60", ((Map<?, ?>) response.get("headers")).get("Retry-After"));
+  }
+
+  @Test
+  void scanWithInvalidPayloadReturnsFieldErrorsBeforeAdmission() throws Exception {
+    OrchestrationApiHandler handler = newHandler(() -> {
+      throw new IllegalStateException("admission must not be reached");
+    });
+    Map<String, Object> event = new HashMap<>();
+    event.put("httpMethod", "POST");
+    event.put("path", "/scan");
+    event.put("body", "{\"payload\":{\"findings\":[{\"fingerprint\":\"\"},7]}}");
+
+    JsonNode body = bodyOf(handler.handle(event), 400);
+
+    assertEquals(2, body.get("errors").size());
+    assertEquals("payload.findings[0].fingerprint",
+        body.get("errors").get(0).get("field").asText());
+    assertEquals("payload.findings[1]", body.get("errors").get(1).get("field").asText());
+  }
+
+  private OrchestrationApiHandler newHandler() {
+    return newHandler(() -> { });
+  }
+
+  private OrchestrationApiHandler newHandler(AdmissionController admissionController) {
+    PushService pushService = new PushService(Map.of("serviceA", payload -> "msg-1"),
+        new OrchestrationStore() {
+          @Override
+          public void recordStart(String requestId, Map<String, String> statuses,
+              Map<String, String> attributes, ResourceUsage usage) {
+          }
+
+          @Override
+          public void recordFailure(String requestId, String reason) {
+          }
+
+          @Override
+          public ReusableResult findReusableResult(String payloadHash) {
+            return null;
+          }
+
+          @Override
+          public void recordReuse(String requestId, ReusableResult result,
+              Map<String, String> attributes, ResourceUsage usage) {
+          }
+        }, objectMapper, admissionController,
+        new InMemoryIdempotencyStore(), RoutingRules.none(), PayloadSharder.disabled(),
+        PayloadSchema.load(objectMapper, ""), new SpanExporter(objectMapper, "", "pushToSqs"));
+    return new OrchestrationApiHandler(pushService,
+        new OrchestrationStatusReader(dynamoDb, "status-table"),
+        new FindingsReader(s3, objectMapper, "orchestrated-bucket"),
+        objectMapper,
+        new ResponseCompressor(1024),
+        ServiceOutputReader.fromSpec(s3, "serviceA=bucket-a,serviceB=bucket-b"),
+        new OrchestrationLister(dynamoDb, "status-table", 1));
+  }
+
+  private Map<String, Object> findingsEvent(String requestId, Map<String, String> query) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("httpMethod", "GET");
+    event.put("path", "/findings/" + requestId);
+    event.put("queryStringParameters", query);
+    return event;
+  }
+
+  private Map<String, Object> statusEvent(String requestId) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("httpMethod", "GET");
+    event.put("path", "/status/" + requestId);
+    return event;
+  }
+
+  private JsonNode bodyOf(Map<String, Object> response, int expectedStatus) throws Exception {
+    assertEquals(expectedStatus, response.get("statusCode"));
+    return objectMapper.readTree(response.get("body").toString());
+  }
+
+  private String mergedDocument(int itemCount, int padding) throws Exception {
+    List<Map<String, Object>> items = new ArrayList<>();
+    for (int i = 0; i < itemCount; i++) {
+      Map<String, Object> item = new LinkedHashMap<>();
+      item.put("index", i);
+      item.put("data", "x".repeat(padding));
+      items.add(item);
+    }
+    Map<String, Object> merged = new LinkedHashMap<>();
+    merged.put("requestId", "req-1");
+    merged.put("items", items);
+    return objectMapper.writeValueAsString(merged);
+  }
+
+  private static final class FakeDynamoDb implements DynamoDbClient {
+    private final Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+    private final Map<String, Runnable> pendingChanges = new HashMap<>();
+    private final Map<String, Integer> changeAfter = new HashMap<>();
+    private int reads;
+    private int batchReads;
+    private String unprocessedOnFirstBatch;
+
+    void put(String requestId, String finalStatus, String mergedKey) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("requestId", AttributeValue.builder().s(requestId).build());
+      item.put("finalStatus", AttributeValue.builder().s(finalStatus).build());
+      if (mergedKey != null) {
+        item.put("mergedKey", AttributeValue.builder().s(mergedKey).build());
+      }
+      items.put(requestId, item);
+    }
+
+    void putAttribute(String requestId, String name, AttributeValue value) {
+      items.get(requestId).put(name, value);
+    }
+
+    void putEngine(String requestId, String service, String status, String outputKey) {
+      Map<String, AttributeValue> item = items.get(requestId);
+      item.put("engine", withEntry(item.get("engine"), service, status));
+      if (outputKey != null) {
+        item.put("outputs", withEntry(item.get("outputs"), service, outputKey));
+      }
+    }
+
+    private AttributeValue withEntry(AttributeValue map, String key, String value) {
+      Map<String, AttributeValue> entries = new HashMap<>();
+      if (map != null) {
+        entries.putAll(map.m());
+      }
+      entries.put(key, AttributeValue.builder().s(value).build());
+      return AttributeValue.builder().m(entries).build();
+    }
+
+    void changeAfterReads(String requestId, int readCount, String finalStatus, String mergedKey) {
+      changeAfter.put(requestId, readCount);
+      pendingChanges.put(requestId, () -> put(requestId, finalStatus, mergedKey));
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+      String requestId = request.key().get("requestId").s();
+      reads++;
+      Integer remaining = changeAfter.get(requestId);
+      if (remaining != null) {
+        if (remaining <= 1) {
+          changeAfter.remove(requestId);
+          pendingChanges.remove(requestId).run();
+        } else {
+          changeAfter.put(requestId, remaining - 1);
+        }
+      }
+      return GetItemResponse.builder().item(items.getOrDefault(requestId, Map.of())).build();
+    }
+
+    @Override
+    public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+      batchReads++;
+      Map.Entry<String, KeysAndAttributes> table =
+          request.requestItems().entrySet().iterator().next();
+      List<Map<String, AttributeValue>> found = new ArrayList<>();
+      List<Map<String, AttributeValue>> unprocessed = new ArrayList<>();
+      for (Map<String, AttributeValue> key : table.getValue().keys()) {
+        String requestId = key.get("requestId").s();
+        if (requestId.equals(unprocessedOnFirstBatch) && batchReads == 1) {
+          unprocessed.add(key);
+        } else if (items.containsKey(requestId)) {
+          found.add(items.get(requestId));
+        }
+      }
+      return BatchGetItemResponse.builder()
+          .responses(Map.of(table.getKey(), found))
+          .unprocessedKeys(unprocessed.isEmpty() ? Map.of() : Map.of(table.getKey(),
+              table.getValue().toBuilder().keys(unprocessed).build()))
+          .build();
+    }
+
+    @Override
+    public String serviceName() {
+      return "dynamodb";
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class FakeS3 implements S3Client {
+    private final Map<String, String[]> objects = new HashMap<>();
+
+    void put(String key, String eTag, String body) {
+      objects.put(key, new String[] {eTag, body});
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+      String[] object = objects.get(request.key());
+      if (object == null) {
+        throw (S3Exception) S3Exception.builder().statusCode(404).build();
+      }
+      if (request.ifMatch() != null && !request.ifMatch().equals(object[0])) {
+        throw (S3Exception) S3Exception.builder().statusCode(412).build();
+      }
+      GetObjectResponse response = GetObjectResponse.builder().eTag(object[0]).build();
+      return new ResponseInputStream<>(response, AbortableInputStream.create(
+          new ByteArrayInputStream(object[1].getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Override
+    public String serviceName() {
+      return "s3";
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.vitrina.lambda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+class OrchestrationListerTest {
+  private static final int SHARDS = 4;
+
+  @Test
+  void pagesWalkEveryShardNewestFirstWithoutGapsOrRepeats() {
+    FakeIndex index = new FakeIndex();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      String requestId = String.format("01HZ%06d", i);
+      String status = i % 3 == 0 ? "DONE" : "PENDING";
+      index.add(requestId, status);
+      if (status.equals("DONE")) {
+        expected.add(0, requestId);
+      }
+    }
+    OrchestrationLister lister = new OrchestrationLister(index, "status-table", SHARDS);
+
+    List<String> seen = new ArrayList<>();
+    String before = null;
+    int pages = 0;
+    do {
+      OrchestrationPage page = lister.list("DONE", before, 3);
+      assertTrue(page.getItems().size() <= 3);
+      for (Map<String, Object> item : page.getItems()) {
+        assertEquals("DONE", item.get("finalStatus"));
+        seen.add((String) item.get("requestId"));
+      }
+      before = page.getNextBefore();
+      pages++;
+    } while (before != null && pages < 50);
+
+    assertEquals(expected, seen);
+  }
+
+  @Test
+  void unfilteredListingStopsWhenShardsAreExhausted() {
+    FakeIndex index = new FakeIndex();
+    index.add("01HZ000001", "DONE");
+    index.add("01HZ000002", "PENDING");
+    OrchestrationLister lister = new OrchestrationLister(index, "status-table", SHARDS);
+
+    OrchestrationPage page = lister.list(null, null, 10);
+
+    assertEquals(2, page.getItems().size());
+    assertEquals("01HZ000002", page.getItems().get(0).get("requestId"));
+    assertEquals(null, page.getNextBefore());
+  }
+
+  // Evaluates Limit before the filter and returns a LastEvaluatedKey, as the index does.
+  private static final class FakeIndex implements DynamoDbClient {
+    private final List<Map<String, AttributeValue>> items = new ArrayList<>();
+
+    void add(String requestId, String status) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("requestId", AttributeValue.builder().s(requestId).build());
+      item.put("finalStatus", AttributeValue.builder().s(status).build());
+      item.put(OrchestrationLister.LIST_SHARD_ATTRIBUTE, AttributeValue.builder()
+          .s(OrchestrationLister.shardFor(requestId, SHARDS))
+          .build());
+      items.add(item);
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request) {
+      Map<String, AttributeValue> values = request.expressionAttributeValues();
+      String shard = values.get(":shard").s();
+      String before = values.containsKey(":before") ? values.get(":before").s() : null;
+      Map<String, AttributeValue> startKey = request.exclusiveStartKey();
+      String start = startKey == null || startKey.isEmpty()
+          ? null : startKey.get("requestId").s();
+      List<Map<String, AttributeValue>> candidates = new ArrayList<>();
+      for (Map<String, AttributeValue> item : items) {
+        String requestId = item.get("requestId").s();
+        if (shard.equals(item.get(OrchestrationLister.LIST_SHARD_ATTRIBUTE).s())
+            && (before == null || requestId.compareTo(before) < 0)
+            && (start == null || requestId.compareTo(start) < 0)) {
+          candidates.add(item);
+        }
+      }
+      candidates.sort(Comparator.comparing(
+          (Map<String, AttributeValue> item) -> item.get("requestId").s()).reversed());
+      List<Map<String, AttributeValue>> evaluated =
+          candidates.subList(0, Math.min(request.limit(), candidates.size()));
+      List<Map<String, AttributeValue>> matched = new ArrayList<>();
+      for (Map<String, AttributeValue> item : evaluated) {
+        if (!values.containsKey(":status")
+            || values.get(":status").s().equals(item.get("finalStatus").s())) {
+          matched.add(item);
+        }
+      }
+      Map<String, AttributeValue> lastKey = evaluated.size() < candidates.size()
+          ? Map.of("requestId", evaluated.get(evaluated.size() - 1).get("requestId"))
+          : null;
+      return QueryResponse.builder().items(matched).lastEvaluatedKey(lastKey).build();
+    }
+
+    @Override
+    public String serviceName() {
+      return "dynamodb";
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package com.vitrina.lambda;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+
+class QueueBacklogAdmissionControllerTest {
+  private final AtomicLong depth = new AtomicLong();
+  private final AtomicLong age = new AtomicLong();
+  private final AtomicInteger reads = new AtomicInteger();
+  private final AtomicInteger metricReads = new AtomicInteger();
+  private final MutableClock clock = new MutableClock();
+  private final SqsClient sqsClient = new SqsClient() {
+    @Override
+    public GetQueueAttributesResponse getQueueAttributes(GetQueueAttributesRequest request) {
+      reads.incrementAndGet();
+      long queueDepth = request.queueUrl().endsWith("a") ? depth.get() : 0;
+      return GetQueueAttributesResponse.builder()
+          .attributesAsStrings(Map.of("ApproximateNumberOfMessages", Long.toString(queueDepth)))
+          .build();
+    }
+
+    @Override
+    public String serviceName() {
+      return "sqs";
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+  private final CloudWatchClient cloudWatchClient = new CloudWatchClient() {
+    @Override
+    public GetMetricDataResponse getMetricData(GetMetricDataRequest request) {
+      metricReads.incrementAndGet();
+      List<MetricDataResult> results = new ArrayList<>();
+      for (MetricDataQuery query : request.metricDataQueries()) {
+        String queue = query.metricStat().metric().dimensions().get(0).value();
+        results.add(MetricDataResult.builder()
+            .id(query.id())
+            .values(queue.equals("queue-b") ? List.of((double) age.get(), 0.0) : List.of())
+            .build());
+      }
+      return GetMetricDataResponse.builder().metricDataResults(results).build();
+    }
+
+    @Override
+    public String serviceName() {
+      return "monitoring";
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+  private final QueueBacklogAdmissionController controller = new QueueBacklogAdmissionController(
+      sqsClient, cloudWatchClient, List.of("https://sqs/1/queue-a", "https://sqs/1/queue-b"), 100,
+      Duration.ofSeconds(60), Duration.ofSeconds(5), 10, clock);
+
+  @Test
+  void backlogIsReadAtMostOncePerRefreshInterval() {
+    controller.admit();
+    controller.admit();
+    assertEquals(2, reads.get());
+
+    depth.set(250);
+    controller.admit();
+    clock.advance(Duration.ofSeconds(5));
+    OverloadedException ex = assertThrows(OverloadedException.class, controller::admit);
+
+    assertEquals(4, reads.get());
+    assertEquals(30, ex.getRetryAfterSeconds());
+  }
+
+  @Test
+  void oldestMessageAgeTripsAdmissionWithItsOwnRetryAfter() {
+    controller.admit();
+    age.set(200);
+    clock.advance(Duration.ofSeconds(30));
+    controller.admit();
+    assertEquals(1, metricReads.get());
+
+    clock.advance(Duration.ofSeconds(30));
+    OverloadedException ex = assertThrows(OverloadedException.class, controller::admit);
+
+    assertEquals(2, metricReads.get());
+    assertEquals(40, ex.getRetryAfterSeconds());
+
+    depth.set(250);
+    clock.advance(Duration.ofSeconds(5));
+    ex = assertThrows(OverloadedException.class, controller::admit);
+    assertEquals(40, ex.getRetryAfterSeconds());
+  }
+
+  @Test
+  void unreadableBacklogAdmitsRequests() {
+    QueueBacklogAdmissionController failing = new QueueBacklogAdmissionController(
+        new SqsClient() {
+          @Override
+          public String serviceName() {
+            return "sqs";
+          }
+
+          @Override
+          public void close() {
+          }
+        }, new CloudWatchClient() {
+          @Override
+          public String serviceName() {
+            return "monitoring";
+          }
+
+          @Override
+          public void close() {
+          }
+        }, List.of("queue-a"), 100, Duration.ofSeconds(60), Duration.ofSeconds(5), 10, clock);
+    failing.admit();
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
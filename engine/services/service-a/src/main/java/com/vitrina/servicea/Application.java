@@ -3,7 +3,7 @@ package com.vitrina.servicea;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = {"com.vitrina.servicea", "com.vitrina.servicecommon"})
 public class Application {
   public static void main(String[] args) {
     SpringApplication.run(Application.class, args);
@@ -2,10 +2,22 @@ package com.vitrina.servicea;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.vitrina.common.ResourceUsage;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.common.TraceContext;
+import com.vitrina.servicecommon.Analyzer;
+import com.vitrina.servicecommon.LatencyMetrics;
+import com.vitrina.servicecommon.ShedWorkMetrics;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,12 +34,14 @@ import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 
@@ -38,33 +52,51 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
       DateTimeFormatter.ofPattern("yyyy/MM/dd/HH").withZone(ZoneOffset.UTC);
   private static final int WAIT_TIME_SECONDS = 20;
   private static final long IDLE_SLEEP_MILLIS = 40_000;
+  private static final String SHARD_OUTPUTS_ATTRIBUTE = "shardOutputs";
+  private static final String SORTED_FINDINGS = "sortedFindings";
+  private static final String SENT_TIMESTAMP = "SentTimestamp";
+  private static final String RECEIVE_COUNT = "ApproximateReceiveCount";
 
   private final AtomicBoolean running = new AtomicBoolean(true);
   private final SqsClient sqsClient;
   private final S3Client s3Client;
   private final DynamoDbClient dynamoDbClient;
   private final ObjectMapper objectMapper;
+  private final ShedWorkMetrics shedWorkMetrics;
+  private final List<Analyzer> analyzers;
+  private final LatencyMetrics latencyMetrics;
+  private final SpanExporter spanExporter;
   private final String queueUrl;
   private final String bucketName;
   private final String serviceName;
   private final String tableName;
   private final String mergeQueueUrl;
   private final List<String> expectedServices;
+  private final long mergeLeaseMillis;
 
   public SqsToS3Worker(SqsClient sqsClient,
       S3Client s3Client,
       DynamoDbClient dynamoDbClient,
       ObjectMapper objectMapper,
+      ShedWorkMetrics shedWorkMetrics,
+      List<Analyzer> analyzers,
+      LatencyMetrics latencyMetrics,
+      SpanExporter spanExporter,
       @Value("${app.sqs.queue-url}") String queueUrl,
       @Value("${app.s3.bucket-name}") String bucketName,
       @Value("${app.service.name}") String serviceName,
       @Value("${app.dynamo.table-name}") String tableName,
       @Value("${app.sqs.merge-queue-url}") String mergeQueueUrl,
-      @Value("${app.expected-services}") String expectedServices) {
+      @Value("${app.expected-services}") String expectedServices,
+      @Value("${app.merge.lease-seconds}") long mergeLeaseSeconds) {
     this.sqsClient = Objects.requireNonNull(sqsClient, "sqsClient");
     this.s3Client = Objects.requireNonNull(s3Client, "s3Client");
     this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
     this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.shedWorkMetrics = Objects.requireNonNull(shedWorkMetrics, "shedWorkMetrics");
+    this.analyzers = List.copyOf(analyzers);
+    this.latencyMetrics = Objects.requireNonNull(latencyMetrics, "latencyMetrics");
+    this.spanExporter = Objects.requireNonNull(spanExporter, "spanExporter");
     if (queueUrl == null || queueUrl.isBlank()) {
       throw new IllegalStateException("SQS queue URL is required");
     }
@@ -86,6 +118,10 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
     this.tableName = tableName;
     this.mergeQueueUrl = mergeQueueUrl;
     this.expectedServices = parseExpectedServices(expectedServices);
+    if (mergeLeaseSeconds < 1) {
+      throw new IllegalStateException("Merge lease must be at least 1 second");
+    }
+    this.mergeLeaseMillis = mergeLeaseSeconds * 1000;
   }
 
   @Override
@@ -100,6 +136,8 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
         .queueUrl(queueUrl)
         .maxNumberOfMessages(10)
         .waitTimeSeconds(WAIT_TIME_SECONDS)
+        .messageAttributeNames(TraceContext.MESSAGE_ATTRIBUTE)
+        .attributeNamesWithStrings(SENT_TIMESTAMP, RECEIVE_COUNT)
         .build();
 
     while (running.get()) {
@@ -119,21 +157,54 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
     }
   }
 
-  private void handleMessage(Message message) {
+  void handleMessage(Message message) {
+    long receivedAt = System.currentTimeMillis();
+    ResourceUsage usage = new ResourceUsage();
+    usage.add(ResourceUsage.SQS_RECEIVES, 1);
+    usage.add(ResourceUsage.REDELIVERIES, isRedelivery(message) ? 1 : 0);
+    String requestId = "";
     try {
       Map<String, Object> envelope = objectMapper.readValue(
           message.body(), new TypeReference<>() {});
-      String requestId = Objects.toString(envelope.get("requestId"), "").trim();
+      requestId = Objects.toString(envelope.get("requestId"), "").trim();
       if (requestId.isEmpty()) {
         throw new IllegalArgumentException("requestId is required in payload");
       }
+      TraceContext parent = TraceContext.parse(traceparentOf(message));
+      TraceContext span = parent == null ? TraceContext.newTrace() : parent.newSpan();
+      Long dwellMillis = queueDwellMillis(message, receivedAt);
+      if (dwellMillis != null) {
+        latencyMetrics.recordQueueDwell(requestId, span.getTraceId(), dwellMillis);
+      }
+      Map<String, Object> spanAttributes = new LinkedHashMap<>();
+      spanAttributes.put("requestId", requestId);
+      spanAttributes.put("messaging.message.id", message.messageId());
+      spanAttributes.put("messaging.dwell_ms", dwellMillis);
+
+      Instant deadline = readDeadline(requestId, envelope.get("deadline"));
+      if (deadline != null && Instant.now().isAfter(deadline)) {
+        markExpired(requestId);
+        usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+        deleteMessage(message);
+        shedWorkMetrics.recordShed(requestId, "deadline");
+        spanAttributes.put("outcome", "expired");
+        exportSpan(span, parent, receivedAt, spanAttributes);
+        logger.info("Dropped message past its deadline. requestId={}, deadline={}",
+            requestId, deadline);
+        return;
+      }
 
       Map<String, Object> payload = normalizePayload(envelope.get("payload"));
+      analyze(payload);
       payload.put("serviceName", serviceName);
 
       Map<String, Object> output = new LinkedHashMap<>();
       output.put("requestId", requestId);
       output.put("payload", payload);
+      List<Map<String, Object>> sortedFindings = sortFindings(payload);
+      if (!sortedFindings.isEmpty()) {
+        output.put(SORTED_FINDINGS, sortedFindings);
+      }
 
       String key = serviceName + "/" + PATH_FORMATTER.format(Instant.now())
           + "/" + requestId + "-" + message.messageId() + ".json";
@@ -142,24 +213,167 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
           .key(key)
           .contentType("application/json")
           .build();
-      s3Client.putObject(putRequest,
-          RequestBody.fromBytes(objectMapper.writeValueAsBytes(output)));
+      byte[] body = objectMapper.writeValueAsBytes(output);
+      s3Client.putObject(putRequest, RequestBody.fromBytes(body));
+      usage.add(ResourceUsage.S3_BYTES_WRITTEN, body.length);
 
-      updateStatus(requestId, "DONE", key);
-      tryTriggerMerge(requestId);
+      int shardCount = readInt(envelope.get("shardCount"), 1);
+      Map<String, AttributeValue> record;
+      if (shardCount > 1) {
+        int shard = readInt(envelope.get("shard"), -1);
+        if (shard < 0 || shard >= shardCount) {
+          throw new IllegalArgumentException("shard must be between 0 and shardCount - 1");
+        }
+        record = recordShardOutput(requestId, shard, key);
+        usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+        int stored = countShardOutputs(record);
+        spanAttributes.put("shard", shard);
+        if (stored < shardCount) {
+          deleteMessage(message);
+          spanAttributes.put("outcome", "stored");
+          exportSpan(span, parent, receivedAt, spanAttributes);
+          logger.info("Stored shard in S3. key={}, shard={}, storedShards={}, shardCount={}",
+              key, shard, stored, shardCount);
+          return;
+        }
+        record = updateStatus(requestId, "DONE", null);
+      } else {
+        record = updateStatus(requestId, "DONE", key);
+      }
+      usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+      tryTriggerMerge(requestId, servicesFor(record), span, usage);
 
-      sqsClient.deleteMessage(DeleteMessageRequest.builder()
-          .queueUrl(queueUrl)
-          .receiptHandle(message.receiptHandle())
-          .build());
+      deleteMessage(message);
+      spanAttributes.put("outcome", "stored");
+      exportSpan(span, parent, receivedAt, spanAttributes);
 
       logger.info("Stored message in S3. key={}, messageId={}", key, message.messageId());
     } catch (Exception ex) {
       logger.error("Failed to process message. messageId={}", message.messageId(), ex);
       throw new RuntimeException(ex);
+    } finally {
+      if (!requestId.isEmpty()) {
+        recordUsage(requestId, usage);
+      }
+    }
+  }
+
+  // Failed attempts are recorded too; their cost shows up again as a redelivery.
+  private void recordUsage(String requestId, ResourceUsage usage) {
+    usage.stopCpuClock();
+    usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+    try {
+      dynamoDbClient.updateItem(usage.toUpdateRequest(tableName, requestId, serviceName));
+    } catch (Exception ex) {
+      // Records created before resource accounting have no resources map to add to.
+      logger.warn("Failed to record resource usage. requestId={}", requestId, ex);
+    }
+  }
+
+  private boolean isRedelivery(Message message) {
+    Map<String, String> attributes = message.attributesAsStrings();
+    String receiveCount = attributes == null ? null : attributes.get(RECEIVE_COUNT);
+    return receiveCount != null && !receiveCount.equals("1");
+  }
+
+  private String traceparentOf(Message message) {
+    Map<String, MessageAttributeValue> attributes = message.messageAttributes();
+    MessageAttributeValue value =
+        attributes == null ? null : attributes.get(TraceContext.MESSAGE_ATTRIBUTE);
+    return value == null ? null : value.stringValue();
+  }
+
+  private Long queueDwellMillis(Message message, long receivedAt) {
+    Map<String, String> attributes = message.attributesAsStrings();
+    String sentTimestamp = attributes == null ? null : attributes.get(SENT_TIMESTAMP);
+    try {
+      return sentTimestamp == null ? null : receivedAt - Long.parseLong(sentTimestamp);
+    } catch (NumberFormatException ex) {
+      return null;
     }
   }
 
+  private void exportSpan(TraceContext span, TraceContext parent, long startedAt,
+      Map<String, Object> attributes) {
+    spanExporter.export(serviceName + " process", span,
+        parent == null ? null : parent.getSpanId(), startedAt, System.currentTimeMillis(),
+        attributes);
+  }
+
+  private int readInt(Object rawValue, int defaultValue) {
+    return rawValue instanceof Number number ? number.intValue() : defaultValue;
+  }
+
+  // Shard outputs live under "<service>/<shard>" so every worker's write lands in one map; the
+  // last shard of a service sees all of them in its ALL_NEW response and marks the service DONE.
+  private Map<String, AttributeValue> recordShardOutput(String requestId, int shard,
+      String outputKey) {
+    UpdateItemRequest request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .updateExpression("SET #shardOutputs.#shard = :outputKey")
+        .expressionAttributeNames(Map.of(
+            "#shardOutputs", SHARD_OUTPUTS_ATTRIBUTE,
+            "#shard", serviceName + "/" + shard))
+        .expressionAttributeValues(Map.of(
+            ":outputKey", AttributeValue.builder().s(outputKey).build()))
+        .returnValues(ReturnValue.ALL_NEW)
+        .build();
+    return dynamoDbClient.updateItem(request).attributes();
+  }
+
+  private int countShardOutputs(Map<String, AttributeValue> record) {
+    AttributeValue shardOutputs = record == null ? null : record.get(SHARD_OUTPUTS_ATTRIBUTE);
+    if (shardOutputs == null || shardOutputs.m() == null) {
+      return 0;
+    }
+    String prefix = serviceName + "/";
+    return (int) shardOutputs.m().keySet().stream().filter(key -> key.startsWith(prefix)).count();
+  }
+
+  private Instant readDeadline(String requestId, Object rawDeadline) {
+    if (rawDeadline == null || rawDeadline.toString().isBlank()) {
+      return null;
+    }
+    try {
+      return Instant.parse(rawDeadline.toString().trim());
+    } catch (DateTimeParseException ex) {
+      logger.warn("Ignoring invalid deadline. requestId={}, deadline={}", requestId, rawDeadline);
+      return null;
+    }
+  }
+
+  private void markExpired(String requestId) {
+    UpdateItemRequest request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .updateExpression("SET #engine.#service = :expired, #finalStatus = :expired "
+            + "REMOVE #leasePartition, #leaseExpiresAt")
+        .conditionExpression("attribute_exists(requestId) AND #finalStatus <> :done")
+        .expressionAttributeNames(Map.of(
+            "#engine", "engine",
+            "#service", serviceName,
+            "#finalStatus", "finalStatus",
+            "#leasePartition", "mergeLeasePartition",
+            "#leaseExpiresAt", "mergeLeaseExpiresAt"))
+        .expressionAttributeValues(Map.of(
+            ":expired", AttributeValue.builder().s("EXPIRED").build(),
+            ":done", AttributeValue.builder().s("DONE").build()))
+        .build();
+    try {
+      dynamoDbClient.updateItem(request);
+    } catch (ConditionalCheckFailedException ex) {
+      logger.warn("Request already done or missing. Not marking expired. requestId={}", requestId);
+    }
+  }
+
+  private void deleteMessage(Message message) {
+    sqsClient.deleteMessage(DeleteMessageRequest.builder()
+        .queueUrl(queueUrl)
+        .receiptHandle(message.receiptHandle())
+        .build());
+  }
+
   private Map<String, Object> normalizePayload(Object rawPayload) {
     if (rawPayload instanceof Map<?, ?> rawMap) {
       Map<String, Object> payload = new LinkedHashMap<>();
@@ -175,28 +389,98 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
     return payload;
   }
 
-  private void updateStatus(String requestId, String status, String outputKey) {
+  // Analyzer findings follow any the payload already carries.
+  private void analyze(Map<String, Object> payload) {
+    List<Object> findings = new ArrayList<>();
+    for (Analyzer analyzer : analyzers) {
+      findings.addAll(analyzer.analyze(payload));
+    }
+    if (findings.isEmpty()) {
+      return;
+    }
+    Object existing = payload.get("findings");
+    if (existing != null && !(existing instanceof List)) {
+      throw new IllegalArgumentException("payload.findings must be an array");
+    }
+    if (existing instanceof List<?> existingFindings) {
+      findings.addAll(0, existingFindings);
+    }
+    payload.put("findings", findings);
+  }
+
+  // The merge service de-duplicates findings with a streaming k-way merge over fingerprint
+  // order. That order lives in a sorted copy next to the payload, so payload.findings stays as
+  // the caller sent it; a finding without a fingerprint gets one from its canonical JSON.
+  private List<Map<String, Object>> sortFindings(Map<String, Object> payload) throws Exception {
+    if (!(payload.get("findings") instanceof List<?> findings)) {
+      return List.of();
+    }
+    List<Map<String, Object>> sorted = new ArrayList<>();
+    for (Object finding : findings) {
+      if (!(finding instanceof Map<?, ?> fields)) {
+        throw new IllegalArgumentException("payload.findings entries must be objects");
+      }
+      Object fingerprint = fields.get("fingerprint");
+      Map<String, Object> entry = new LinkedHashMap<>();
+      entry.put("fingerprint", fingerprint == null ? fingerprint(fields) : fingerprint.toString());
+      entry.put("finding", finding);
+      sorted.add(entry);
+    }
+    sorted.sort(Comparator.comparing(entry -> (String) entry.get("fingerprint")));
+    return sorted;
+  }
+
+  private String fingerprint(Map<?, ?> finding) throws Exception {
+    byte[] canonical = objectMapper.writer()
+        .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .writeValueAsBytes(finding);
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+  }
+
+  // Sharded services leave outputs unset; the merge reads their keys from shardOutputs.
+  private Map<String, AttributeValue> updateStatus(String requestId, String status,
+      String outputKey) {
+    Map<String, String> attributeNames = new LinkedHashMap<>();
+    attributeNames.put("#engine", "engine");
+    attributeNames.put("#service", serviceName);
+    Map<String, AttributeValue> attributeValues = new LinkedHashMap<>();
+    attributeValues.put(":status", AttributeValue.builder().s(status).build());
+    String updateExpression = "SET #engine.#service = :status";
+    if (outputKey != null) {
+      attributeNames.put("#outputs", "outputs");
+      attributeValues.put(":outputKey", AttributeValue.builder().s(outputKey).build());
+      updateExpression += ", #outputs.#service = :outputKey";
+    }
     UpdateItemRequest request = UpdateItemRequest.builder()
         .tableName(tableName)
         .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
-        .updateExpression("SET #engine.#service = :status, #outputs.#service = :outputKey")
-        .expressionAttributeNames(Map.of(
-            "#engine", "engine",
-            "#outputs", "outputs",
-            "#service", serviceName))
-        .expressionAttributeValues(Map.of(
-            ":status", AttributeValue.builder().s(status).build(),
-            ":outputKey", AttributeValue.builder().s(outputKey).build()))
+        .updateExpression(updateExpression)
+        .expressionAttributeNames(attributeNames)
+        .expressionAttributeValues(attributeValues)
+        .returnValues(ReturnValue.ALL_NEW)
         .build();
-    dynamoDbClient.updateItem(request);
+    return dynamoDbClient.updateItem(request).attributes();
   }
 
-  private void tryTriggerMerge(String requestId) {
-    if (expectedServices.isEmpty()) {
+  // The push path records only the routed services in the engine map; records written before
+  // routing existed fall back to the configured list.
+  private List<String> servicesFor(Map<String, AttributeValue> record) {
+    AttributeValue engine = record == null ? null : record.get("engine");
+    if (engine == null || engine.m() == null || engine.m().isEmpty()) {
+      return expectedServices;
+    }
+    return List.copyOf(engine.m().keySet());
+  }
+
+  private void tryTriggerMerge(String requestId, List<String> services, TraceContext span,
+      ResourceUsage usage) {
+    if (services.isEmpty()) {
       logger.warn("Expected services list is empty. Skipping merge trigger. requestId={}", requestId);
       return;
     }
-    if (!markMergeInProgress(requestId)) {
+    // Counted whether or not the condition holds; a failed conditional write is still billed.
+    usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+    if (!markMergeInProgress(requestId, services)) {
       return;
     }
     try {
@@ -204,28 +488,39 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
       sqsClient.sendMessage(SendMessageRequest.builder()
           .queueUrl(mergeQueueUrl)
           .messageBody(body)
+          .messageAttributes(Map.of(TraceContext.MESSAGE_ATTRIBUTE, MessageAttributeValue.builder()
+              .dataType("String")
+              .stringValue(span.toTraceparent())
+              .build()))
           .build());
+      usage.add(ResourceUsage.SQS_SENDS, 1);
       logger.info("Triggered merge. requestId={}", requestId);
     } catch (Exception ex) {
       logger.error("Failed to send merge event. requestId={}", requestId, ex);
       resetMergeStatus(requestId);
+      usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
       throw new RuntimeException(ex);
     }
   }
 
-  private boolean markMergeInProgress(String requestId) {
+  private boolean markMergeInProgress(String requestId, List<String> services) {
     Map<String, String> attributeNames = new LinkedHashMap<>();
     attributeNames.put("#engine", "engine");
     attributeNames.put("#finalStatus", "finalStatus");
+    attributeNames.put("#leasePartition", "mergeLeasePartition");
+    attributeNames.put("#leaseExpiresAt", "mergeLeaseExpiresAt");
 
     Map<String, AttributeValue> attributeValues = new LinkedHashMap<>();
     attributeValues.put(":pending", AttributeValue.builder().s("PENDING").build());
     attributeValues.put(":merging", AttributeValue.builder().s("MERGING").build());
     attributeValues.put(":done", AttributeValue.builder().s("DONE").build());
+    attributeValues.put(":leaseExpiresAt", AttributeValue.builder()
+        .n(Long.toString(System.currentTimeMillis() + mergeLeaseMillis))
+        .build());
 
     StringBuilder condition = new StringBuilder("#finalStatus = :pending");
     int index = 0;
-    for (String service : expectedServices) {
+    for (String service : services) {
       String key = "#svc" + index++;
       attributeNames.put(key, service);
       condition.append(" AND #engine.").append(key).append(" = :done");
@@ -234,7 +529,8 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
     UpdateItemRequest request = UpdateItemRequest.builder()
         .tableName(tableName)
         .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
-        .updateExpression("SET #finalStatus = :merging")
+        .updateExpression("SET #finalStatus = :merging, #leasePartition = :merging, "
+            + "#leaseExpiresAt = :leaseExpiresAt")
         .conditionExpression(condition.toString())
         .expressionAttributeNames(attributeNames)
         .expressionAttributeValues(attributeValues)
@@ -251,9 +547,12 @@ public class SqsToS3Worker implements CommandLineRunner, DisposableBean {
     UpdateItemRequest request = UpdateItemRequest.builder()
         .tableName(tableName)
         .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
-        .updateExpression("SET #finalStatus = :pending")
+        .updateExpression("SET #finalStatus = :pending REMOVE #leasePartition, #leaseExpiresAt")
         .conditionExpression("#finalStatus = :merging")
-        .expressionAttributeNames(Map.of("#finalStatus", "finalStatus"))
+        .expressionAttributeNames(Map.of(
+            "#finalStatus", "finalStatus",
+            "#leasePartition", "mergeLeasePartition",
+            "#leaseExpiresAt", "mergeLeaseExpiresAt"))
         .expressionAttributeValues(Map.of(
             ":pending", AttributeValue.builder().s("PENDING").build(),
             ":merging", AttributeValue.builder().s("MERGING").build()))
@@ -0,0 +1,155 @@
+package com.vitrina.servicea;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.servicecommon.InMemoryDynamoDb;
+import com.vitrina.servicecommon.InMemoryS3;
+import com.vitrina.servicecommon.LatencyMetrics;
+import com.vitrina.servicecommon.RecordingSqs;
+import com.vitrina.servicecommon.ShedWorkMetrics;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+class SqsToS3WorkerTest {
+  private static final String SERVICE = "serviceA";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+  private final InMemoryS3 s3 = new InMemoryS3();
+  private final RecordingSqs sqs = new RecordingSqs();
+  private final ShedWorkMetrics shedWorkMetrics = new ShedWorkMetrics(objectMapper, SERVICE);
+  private final SqsToS3Worker worker = newWorker(new SpanExporter(objectMapper, "", SERVICE));
+
+  private SqsToS3Worker newWorker(SpanExporter spanExporter) {
+    return new SqsToS3Worker(sqs, s3, dynamoDb, objectMapper, shedWorkMetrics, List.of(),
+        new LatencyMetrics(objectMapper, SERVICE), spanExporter, "service-queue", "bucket",
+        SERVICE, "status-table", "merge-queue", "serviceA,serviceB", 900);
+  }
+
+  @Test
+  void expiredDeadlineMarksTheRecordExpired() {
+    dynamoDb.put(pendingRecord("req-1", 1));
+
+    worker.handleMessage(message("receipt-1",
+        "{\"requestId\":\"req-1\",\"deadline\":\"2020-01-01T00:00:00Z\",\"payload\":{}}", null));
+
+    Map<String, AttributeValue> record = dynamoDb.get("req-1");
+    assertEquals("EXPIRED", record.get("finalStatus").s());
+    assertEquals("EXPIRED", record.get("engine").m().get(SERVICE).s());
+    assertEquals(1, shedWorkMetrics.shedCount());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+    assertEquals(List.of(), sqs.sent);
+  }
+
+  @Test
+  void shardMessagesWritePerShardOutputsAndTheLastOneCompletesTheService() {
+    dynamoDb.put(pendingRecord("req-1", 2));
+
+    worker.handleMessage(message("receipt-1",
+        "{\"requestId\":\"req-1\",\"shard\":1,\"shardCount\":2,\"payload\":{\"n\":1}}", null));
+
+    Map<String, AttributeValue> record = dynamoDb.get("req-1");
+    String key = record.get("shardOutputs").m().get(SERVICE + "/1").s();
+    assertNotNull(s3.get("bucket", key));
+    assertEquals("IN_PROGRESS", record.get("engine").m().get(SERVICE).s());
+    assertNull(record.get("outputs").m().get(SERVICE));
+
+    worker.handleMessage(message("receipt-2",
+        "{\"requestId\":\"req-1\",\"shard\":0,\"shardCount\":2,\"payload\":{\"n\":0}}", null));
+
+    record = dynamoDb.get("req-1");
+    assertEquals(2, record.get("shardOutputs").m().size());
+    assertEquals("DONE", record.get("engine").m().get(SERVICE).s());
+    assertNull(record.get("outputs").m().get(SERVICE));
+    assertEquals("MERGING", record.get("finalStatus").s());
+    assertEquals(1, sqs.sent.size());
+    assertEquals(List.of("receipt-1", "receipt-2"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void findingsStayAsSentWithASortedCopyBesideThePayload() throws Exception {
+    dynamoDb.put(pendingRecord("req-1", 1));
+
+    worker.handleMessage(message("receipt-1", "{\"requestId\":\"req-1\",\"payload\":"
+        + "{\"findings\":[{\"fingerprint\":\"b2\"},{\"rule\":\"x\"},{\"fingerprint\":\"a1\"}]}}",
+        null));
+
+    String key = dynamoDb.get("req-1").get("outputs").m().get(SERVICE).s();
+    JsonNode output = objectMapper.readTree(s3.get("bucket", key));
+    assertEquals(objectMapper.readTree(
+        "[{\"fingerprint\":\"b2\"},{\"rule\":\"x\"},{\"fingerprint\":\"a1\"}]"),
+        output.get("payload").get("findings"));
+    List<String> fingerprints = new ArrayList<>();
+    output.get("sortedFindings").forEach(entry -> {
+      fingerprints.add(entry.get("fingerprint").asText());
+      assertTrue(entry.get("finding").isObject());
+    });
+    assertEquals(3, fingerprints.size());
+    assertEquals(fingerprints.stream().sorted().toList(), fingerprints);
+    assertTrue(fingerprints.containsAll(List.of("a1", "b2")));
+  }
+
+  @Test
+  void traceparentIsContinuedIntoTheSpanAndTheMergeTrigger() throws Exception {
+    dynamoDb.put(pendingRecord("req-1", 1));
+    Path traces = Files.createTempFile("traces", ".jsonl");
+    SqsToS3Worker tracingWorker =
+        newWorker(new SpanExporter(objectMapper, traces.toString(), SERVICE));
+    String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+    tracingWorker.handleMessage(message("receipt-1",
+        "{\"requestId\":\"req-1\",\"payload\":{\"n\":1}}",
+        "00-" + traceId + "-00f067aa0ba902b7-01"));
+
+    List<String> lines = Files.readAllLines(traces);
+    Files.delete(traces);
+    assertEquals(1, lines.size());
+    JsonNode span = objectMapper.readTree(lines.get(0)).get("resourceSpans").get(0)
+        .get("scopeSpans").get(0).get("spans").get(0);
+    assertEquals(traceId, span.get("traceId").asText());
+    assertEquals("00f067aa0ba902b7", span.get("parentSpanId").asText());
+    assertEquals(1, sqs.sent.size());
+    String traceparent = sqs.sent.get(0).messageAttributes().get("traceparent").stringValue();
+    assertTrue(traceparent.startsWith("00-" + traceId + "-" + span.get("spanId").asText()));
+  }
+
+  // Routed to this service only, so finishing it is enough to trigger the merge.
+  private static Map<String, AttributeValue> pendingRecord(String requestId, int shardCount) {
+    Map<String, AttributeValue> item = new LinkedHashMap<>();
+    item.put("requestId", AttributeValue.builder().s(requestId).build());
+    item.put("finalStatus", AttributeValue.builder().s("PENDING").build());
+    item.put("engine", AttributeValue.builder().m(Map.of(
+        SERVICE, AttributeValue.builder().s("IN_PROGRESS").build())).build());
+    item.put("outputs", AttributeValue.builder().m(Map.of()).build());
+    item.put("shardCount", AttributeValue.builder().n(Integer.toString(shardCount)).build());
+    return item;
+  }
+
+  private static Message message(String receiptHandle, String body, String traceparent) {
+    Message.Builder message = Message.builder()
+        .messageId("id-" + receiptHandle)
+        .receiptHandle(receiptHandle)
+        .body(body);
+    if (traceparent != null) {
+      message.messageAttributes(Map.of("traceparent", MessageAttributeValue.builder()
+          .dataType("String")
+          .stringValue(traceparent)
+          .build()));
+    }
+    return message.build();
+  }
+}
@@ -0,0 +1,198 @@
+package com.vitrina.servicecommon;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Aho-Corasick automaton over a fixed set of distinct patterns. After compiling, every pattern
+// occurrence in a text is reported in one pass, independent of the number of patterns. Root
+// transitions use a direct table and other states a dense table over their first-to-last edge
+// character, with the gaps pre-resolved through the failure links so a character inside the
+// range costs one lookup. States whose edges are spread too thinly for a table fall back to
+// binary search over their sorted edges.
+public final class AhoCorasickMatcher {
+  private static final int MAX_SPARSE_SPAN = 64;
+
+  private final int[] rootNext;
+  private final char[] rangeFirst;
+  private final int[] rangeSpan;
+  private final int[] rangeBase;
+  private final int[] dense;
+  private final int[] edgeStart;
+  private final char[] edgeChars;
+  private final int[] edgeTargets;
+  private final int[] fail;
+  private final int[] output;
+  private final int[] patternAt;
+
+  private AhoCorasickMatcher(int[] rootNext, int[] edgeStart, char[] edgeChars,
+      int[] edgeTargets, int[] fail, int[] output, int[] patternAt) {
+    this.rootNext = rootNext;
+    int states = fail.length;
+    this.rangeFirst = new char[states];
+    this.rangeSpan = new int[states];
+    this.rangeBase = new int[states];
+    int denseSize = 0;
+    for (int state = 1; state < states; state++) {
+      int edges = edgeStart[state + 1] - edgeStart[state];
+      if (edges == 0) {
+        continue;
+      }
+      int span = edgeChars[edgeStart[state + 1] - 1] - edgeChars[edgeStart[state]] + 1;
+      if (span <= Math.max(MAX_SPARSE_SPAN, 4 * edges)) {
+        rangeFirst[state] = edgeChars[edgeStart[state]];
+        rangeSpan[state] = span;
+        rangeBase[state] = denseSize;
+        denseSize += span;
+      }
+    }
+    this.dense = new int[denseSize];
+    Arrays.fill(dense, -1);
+    for (int state = 1; state < states; state++) {
+      if (rangeSpan[state] > 0) {
+        for (int i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+          dense[rangeBase[state] + edgeChars[i] - rangeFirst[state]] = edgeTargets[i];
+        }
+      }
+    }
+    this.edgeStart = edgeStart;
+    this.edgeChars = edgeChars;
+    this.edgeTargets = edgeTargets;
+    this.fail = fail;
+    this.output = output;
+    this.patternAt = patternAt;
+  }
+
+  @FunctionalInterface
+  public interface MatchHandler {
+    // end is the offset just past the match; the match starts at end - pattern length.
+    void onMatch(int pattern, int end);
+  }
+
+  public static AhoCorasickMatcher compile(List<String> patterns) {
+    List<Map<Character, Integer>> children = new ArrayList<>();
+    List<Integer> terminal = new ArrayList<>();
+    children.add(new HashMap<>());
+    terminal.add(-1);
+    for (int index = 0; index < patterns.size(); index++) {
+      String pattern = patterns.get(index);
+      if (pattern == null || pattern.isEmpty()) {
+        throw new IllegalArgumentException("Patterns must not be empty");
+      }
+      int state = 0;
+      for (int i = 0; i < pattern.length(); i++) {
+        Integer next = children.get(state).get(pattern.charAt(i));
+        if (next == null) {
+          next = children.size();
+          children.get(state).put(pattern.charAt(i), next);
+          children.add(new HashMap<>());
+          terminal.add(-1);
+        }
+        state = next;
+      }
+      if (terminal.get(state) >= 0) {
+        throw new IllegalArgumentException("Duplicate pattern: " + pattern);
+      }
+      terminal.set(state, index);
+    }
+
+    int states = children.size();
+    int[] patternAt = new int[states];
+    int[] edgeStart = new int[states + 1];
+    for (int state = 0; state < states; state++) {
+      patternAt[state] = terminal.get(state);
+      edgeStart[state + 1] = edgeStart[state] + children.get(state).size();
+    }
+    char[] edgeChars = new char[edgeStart[states]];
+    int[] edgeTargets = new int[edgeStart[states]];
+    for (int state = 0; state < states; state++) {
+      Character[] keys = children.get(state).keySet().toArray(new Character[0]);
+      Arrays.sort(keys);
+      for (int i = 0; i < keys.length; i++) {
+        edgeChars[edgeStart[state] + i] = keys[i];
+        edgeTargets[edgeStart[state] + i] = children.get(state).get(keys[i]);
+      }
+    }
+    int[] rootNext = new int[Character.MAX_VALUE + 1];
+    for (Map.Entry<Character, Integer> edge : children.get(0).entrySet()) {
+      rootNext[edge.getKey()] = edge.getValue();
+    }
+
+    // Breadth-first, so each state's failure target is final before its children need it.
+    int[] fail = new int[states];
+    int[] output = new int[states];
+    AhoCorasickMatcher matcher = new AhoCorasickMatcher(
+        rootNext, edgeStart, edgeChars, edgeTargets, fail, output, patternAt);
+    ArrayDeque<Integer> queue = new ArrayDeque<>(children.get(0).values());
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      for (int i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+        int child = edgeTargets[i];
+        int target = matcher.next(fail[state], edgeChars[i]);
+        fail[child] = target;
+        output[child] = patternAt[target] >= 0 ? target : output[target];
+        queue.add(child);
+      }
+      matcher.resolveGaps(state);
+    }
+    return matcher;
+  }
+
+  // The failure target is shallower, so its own gaps are already resolved.
+  private void resolveGaps(int state) {
+    for (int offset = 0; offset < rangeSpan[state]; offset++) {
+      if (dense[rangeBase[state] + offset] < 0) {
+        dense[rangeBase[state] + offset] = next(fail[state], (char) (rangeFirst[state] + offset));
+      }
+    }
+  }
+
+  public int stateCount() {
+    return fail.length;
+  }
+
+  public void match(CharSequence text, MatchHandler handler) {
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      state = next(state, text.charAt(i));
+      int hit = patternAt[state] >= 0 ? state : output[state];
+      while (hit > 0) {
+        handler.onMatch(patternAt[hit], i + 1);
+        hit = output[hit];
+      }
+    }
+  }
+
+  private int next(int state, char c) {
+    while (state != 0) {
+      if (rangeSpan[state] > 0) {
+        int offset = c - rangeFirst[state];
+        if (offset >= 0 && offset < rangeSpan[state]) {
+          int target = dense[rangeBase[state] + offset];
+          if (target >= 0) {
+            return target;
+          }
+        }
+        state = fail[state];
+        continue;
+      }
+      int low = edgeStart[state];
+      int high = edgeStart[state + 1] - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (edgeChars[mid] < c) {
+          low = mid + 1;
+        } else if (edgeChars[mid] > c) {
+          high = mid - 1;
+        } else {
+          return edgeTargets[mid];
+        }
+      }
+      state = fail[state];
+    }
+    return rootNext[c];
+  }
+}
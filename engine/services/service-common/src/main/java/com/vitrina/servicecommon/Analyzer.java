@@ -0,0 +1,10 @@
+package com.vitrina.servicecommon;
+
+import java.util.List;
+import java.util.Map;
+
+// Detection hook run by SqsToS3Worker on every payload before it is stored. Implementations are
+// Spring beans shared by all messages; their findings are appended to payload.findings.
+public interface Analyzer {
+  List<Map<String, Object>> analyze(Map<String, Object> payload);
+}
@@ -0,0 +1,62 @@
+package com.vitrina.servicecommon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Publishes pipeline latencies as CloudWatch embedded metrics, one value per event, so CloudWatch
+// keeps the full distribution and serves percentiles: QueueDwellMillis from an SQS send to its
+// receive, and EndToEndMillis from the push to the merge marking it DONE.
+@Component
+public class LatencyMetrics {
+  private static final Logger logger = LoggerFactory.getLogger(LatencyMetrics.class);
+  private static final Logger metricsLogger =
+      LoggerFactory.getLogger(ShedWorkMetrics.METRICS_LOGGER);
+  private static final String NAMESPACE = "Vitrina";
+  private static final String QUEUE_DWELL_METRIC = "QueueDwellMillis";
+  private static final String END_TO_END_METRIC = "EndToEndMillis";
+
+  private final ObjectMapper objectMapper;
+  private final String serviceName;
+
+  public LatencyMetrics(ObjectMapper objectMapper,
+      @Value("${app.metrics.service-name}") String serviceName) {
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.serviceName = serviceName;
+  }
+
+  public void recordQueueDwell(String requestId, String traceId, long millis) {
+    emit(QUEUE_DWELL_METRIC, requestId, traceId, millis);
+  }
+
+  public void recordEndToEnd(String requestId, String traceId, long millis) {
+    emit(END_TO_END_METRIC, requestId, traceId, millis);
+  }
+
+  private void emit(String metricName, String requestId, String traceId, long millis) {
+    Map<String, Object> metric = new LinkedHashMap<>();
+    metric.put("Namespace", NAMESPACE);
+    metric.put("Dimensions", List.of(List.of("Service")));
+    metric.put("Metrics", List.of(Map.of("Name", metricName, "Unit", "Milliseconds")));
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("_aws", Map.of(
+        "Timestamp", System.currentTimeMillis(),
+        "CloudWatchMetrics", List.of(metric)));
+    event.put("Service", serviceName);
+    event.put(metricName, Math.max(0, millis));
+    event.put("requestId", requestId);
+    event.put("traceId", traceId);
+    try {
+      metricsLogger.info(objectMapper.writeValueAsString(event));
+    } catch (Exception ex) {
+      logger.warn("Failed to emit latency metric. requestId={}", requestId, ex);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.vitrina.servicecommon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Built-in analyzer: literal patterns from a rule file ("ruleId|severity|pattern" per line, '#'
+// comments) compiled once into an Aho-Corasick automaton. Each string value in the payload is
+// scanned once for all rules, and a rule reports at most one finding per value. The file is a
+// path, or a classpath: location such as the SHIPPED_RULES the services default to.
+@Component
+public class PatternRuleAnalyzer implements Analyzer {
+  private static final Logger logger = LoggerFactory.getLogger(PatternRuleAnalyzer.class);
+  public static final String SHIPPED_RULES =
+      "classpath:com/vitrina/servicecommon/pattern-rules.txt";
+  private static final String CLASSPATH_PREFIX = "classpath:";
+  private static final String FINDING_TYPE = "pattern";
+
+  private final List<List<Rule>> rulesByPattern;
+  private final AhoCorasickMatcher matcher;
+
+  public PatternRuleAnalyzer(@Value("${app.analyzer.rules-file}") String rulesFile) {
+    List<Rule> rules = loadRules(rulesFile);
+    Map<String, List<Rule>> byPattern = new LinkedHashMap<>();
+    for (Rule rule : rules) {
+      byPattern.computeIfAbsent(rule.pattern, pattern -> new ArrayList<>()).add(rule);
+    }
+    this.rulesByPattern = List.copyOf(byPattern.values());
+    long started = System.nanoTime();
+    this.matcher = AhoCorasickMatcher.compile(List.copyOf(byPattern.keySet()));
+    logger.info("Compiled pattern rules. rules={}, patterns={}, states={}, millis={}",
+        rules.size(), byPattern.size(), matcher.stateCount(),
+        (System.nanoTime() - started) / 1_000_000);
+  }
+
+  @Override
+  public List<Map<String, Object>> analyze(Map<String, Object> payload) {
+    List<Map<String, Object>> findings = new ArrayList<>();
+    if (rulesByPattern.isEmpty()) {
+      return findings;
+    }
+    for (Map.Entry<String, Object> entry : payload.entrySet()) {
+      if (!entry.getKey().equals("findings")) {
+        scan(entry.getValue(), entry.getKey(), findings);
+      }
+    }
+    return findings;
+  }
+
+  private void scan(Object value, String path, List<Map<String, Object>> findings) {
+    if (value instanceof String text) {
+      Map<Integer, Integer> firstEnd = new LinkedHashMap<>();
+      matcher.match(text, (pattern, end) -> firstEnd.putIfAbsent(pattern, end));
+      for (Map.Entry<Integer, Integer> hit : firstEnd.entrySet()) {
+        for (Rule rule : rulesByPattern.get(hit.getKey())) {
+          Map<String, Object> finding = new LinkedHashMap<>();
+          finding.put("type", FINDING_TYPE);
+          finding.put("ruleId", rule.id);
+          finding.put("severity", rule.severity);
+          finding.put("path", path);
+          finding.put("offset", hit.getValue() - rule.pattern.length());
+          findings.add(finding);
+        }
+      }
+    } else if (value instanceof Map<?, ?> map) {
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        scan(entry.getValue(), path + "." + entry.getKey(), findings);
+      }
+    } else if (value instanceof List<?> list) {
+      for (int i = 0; i < list.size(); i++) {
+        scan(list.get(i), path + "[" + i + "]", findings);
+      }
+    }
+  }
+
+  private static List<Rule> loadRules(String rulesFile) {
+    List<Rule> rules = new ArrayList<>();
+    if (rulesFile == null || rulesFile.isBlank()) {
+      return rules;
+    }
+    List<String> lines;
+    try (InputStream in = open(rulesFile.trim());
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      lines = reader.lines().toList();
+    } catch (IOException ex) {
+      throw new IllegalStateException("Failed to read rule file " + rulesFile, ex);
+    }
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.isBlank() || line.startsWith("#")) {
+        continue;
+      }
+      String[] parts = line.split("\\|", 3);
+      if (parts.length < 3 || parts[0].isBlank() || parts[1].isBlank() || parts[2].isEmpty()) {
+        throw new IllegalStateException("Invalid rule on line " + (i + 1) + " of " + rulesFile);
+      }
+      rules.add(new Rule(parts[0].trim(), parts[1].trim(), parts[2]));
+    }
+    return rules;
+  }
+
+  private static InputStream open(String location) throws IOException {
+    if (!location.startsWith(CLASSPATH_PREFIX)) {
+      return Files.newInputStream(Path.of(location));
+    }
+    InputStream in = PatternRuleAnalyzer.class.getClassLoader()
+        .getResourceAsStream(location.substring(CLASSPATH_PREFIX.length()));
+    if (in == null) {
+      throw new IOException("Rule file not found on the classpath");
+    }
+    return in;
+  }
+
+  private static final class Rule {
+    private final String id;
+    private final String severity;
+    private final String pattern;
+
+    private Rule(String id, String severity, String pattern) {
+      this.id = id;
+      this.severity = severity;
+      this.pattern = pattern;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.vitrina.servicecommon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Counts messages dropped without doing work and publishes each as a CloudWatch embedded
+// metric, which the awslogs driver ships and CloudWatch extracts as ShedMessages.
+@Component
+public class ShedWorkMetrics {
+  // Embedded metric events go to this logger; metrics-logback.xml writes its lines to stdout
+  // with no pattern around them, since CloudWatch only extracts lines that are pure JSON.
+  public static final String METRICS_LOGGER = "vitrina.metrics";
+  private static final Logger logger = LoggerFactory.getLogger(ShedWorkMetrics.class);
+  private static final Logger metricsLogger = LoggerFactory.getLogger(METRICS_LOGGER);
+  private static final String NAMESPACE = "Vitrina";
+  private static final String METRIC_NAME = "ShedMessages";
+
+  private final AtomicLong shed = new AtomicLong();
+  private final ObjectMapper objectMapper;
+  private final String serviceName;
+
+  public ShedWorkMetrics(ObjectMapper objectMapper,
+      @Value("${app.metrics.service-name}") String serviceName) {
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.serviceName = serviceName;
+  }
+
+  public void recordShed(String requestId, String reason) {
+    shed.incrementAndGet();
+    Map<String, Object> metric = new LinkedHashMap<>();
+    metric.put("Namespace", NAMESPACE);
+    metric.put("Dimensions", List.of(List.of("Service", "Reason")));
+    metric.put("Metrics", List.of(Map.of("Name", METRIC_NAME, "Unit", "Count")));
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("_aws", Map.of(
+        "Timestamp", System.currentTimeMillis(),
+        "CloudWatchMetrics", List.of(metric)));
+    event.put("Service", serviceName);
+    event.put("Reason", reason);
+    event.put(METRIC_NAME, 1);
+    event.put("requestId", requestId);
+    try {
+      metricsLogger.info(objectMapper.writeValueAsString(event));
+    } catch (Exception ex) {
+      logger.warn("Failed to emit shed metric. requestId={}", requestId, ex);
+    }
+  }
+
+  public long shedCount() {
+    return shed.get();
+  }
+}
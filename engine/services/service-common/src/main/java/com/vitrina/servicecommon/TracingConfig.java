@@ -0,0 +1,17 @@
+package com.vitrina.servicecommon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TracingConfig {
+  @Bean
+  public SpanExporter spanExporter(ObjectMapper objectMapper,
+      @Value("${app.tracing.otlp-file}") String otlpFile,
+      @Value("${app.metrics.service-name}") String serviceName) {
+    return new SpanExporter(objectMapper, otlpFile, serviceName);
+  }
+}
@@ -0,0 +1,64 @@
+package com.vitrina.servicecommon;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Throughput harness for AhoCorasickMatcher; not run as a test. After mvn test-compile:
+//   java -cp target/classes:target/test-classes com.vitrina.servicecommon.AhoCorasickBenchmark \
+//     [patterns=10000] [textMiB=16] [iterations=5]
+// Random a-z text keeps the automaton in its busiest shallow states, so it is the slow case;
+// mostly non-matching text (here: digits) shows the root-table fast path.
+public final class AhoCorasickBenchmark {
+  private static final int WARMUP_ITERATIONS = 3;
+
+  private AhoCorasickBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int patternCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int textChars = (args.length > 1 ? Integer.parseInt(args[1]) : 16) * 1024 * 1024;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    Random random = new Random(47);
+
+    Set<String> patterns = new LinkedHashSet<>();
+    while (patterns.size() < patternCount) {
+      patterns.add(randomText(random, "abcdefghijklmnopqrstuvwxyz", 6 + random.nextInt(20)));
+    }
+    long started = System.nanoTime();
+    AhoCorasickMatcher matcher = AhoCorasickMatcher.compile(new ArrayList<>(patterns));
+    System.out.printf("compile: patterns=%d states=%d millis=%d%n", patternCount,
+        matcher.stateCount(), (System.nanoTime() - started) / 1_000_000);
+
+    run("random a-z", matcher, randomText(random, "abcdefghijklmnopqrstuvwxyz", textChars),
+        iterations);
+    run("digits", matcher, randomText(random, "0123456789", textChars), iterations);
+  }
+
+  private static void run(String label, AhoCorasickMatcher matcher, String text, int iterations) {
+    long[] matches = new long[1];
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      matcher.match(text, (pattern, end) -> matches[0]++);
+    }
+    List<Double> rates = new ArrayList<>();
+    for (int i = 0; i < iterations; i++) {
+      long started = System.nanoTime();
+      matcher.match(text, (pattern, end) -> matches[0]++);
+      double seconds = (System.nanoTime() - started) / 1e9;
+      rates.add(text.length() / seconds / (1024 * 1024));
+    }
+    rates.sort(null);
+    System.out.printf("%s: median=%.1f Mchar/s min=%.1f max=%.1f (matches=%d)%n", label,
+        rates.get(rates.size() / 2), rates.get(0), rates.get(rates.size() - 1), matches[0]);
+  }
+
+  private static String randomText(Random random, String alphabet, int length) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,82 @@
+package com.vitrina.servicecommon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class AhoCorasickMatcherTest {
+  @Test
+  void overlappingPatternsAreAllReported() {
+    assertMatchesOracle(List.of("a", "aa", "aaa"), "aaaa");
+    assertMatchesOracle(List.of("abab", "bab", "ab"), "abababab");
+  }
+
+  @Test
+  void nestedPatternsFollowOutputLinks() {
+    assertMatchesOracle(List.of("he", "she", "his", "hers"), "ushers and his shells");
+    assertMatchesOracle(List.of("abcd", "bc", "c", "bcd"), "xabcdx abc bcd");
+  }
+
+  @Test
+  void sparseAndDenseEdgeRangesAgree() {
+    // "a" fans out to characters far apart, so that state uses binary search; "b" fans out to
+    // a narrow range with gaps, which the dense table resolves through failure links.
+    List<String> patterns = List.of("a!", "a~", "a\u4e00", "a\uffff", "bd", "bf", "bh", "dz",
+        "fa\u4e00");
+    assertMatchesOracle(patterns, "a!a~a\u4e00a\uffffbdbebfbgbhdzfa\u4e00ba\u4e00");
+  }
+
+  @Test
+  void randomPatternsMatchTheOracle() {
+    Random random = new Random(47);
+    String alphabet = "abcd\u00e9\u4e00";
+    for (int round = 0; round < 200; round++) {
+      Set<String> patterns = new LinkedHashSet<>();
+      int count = 1 + random.nextInt(12);
+      while (patterns.size() < count) {
+        patterns.add(randomText(random, alphabet, 1 + random.nextInt(5)));
+      }
+      assertMatchesOracle(new ArrayList<>(patterns),
+          randomText(random, alphabet, random.nextInt(200)));
+    }
+  }
+
+  @Test
+  void emptyAndDuplicatePatternsAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> AhoCorasickMatcher.compile(List.of("")));
+    assertThrows(IllegalArgumentException.class,
+        () -> AhoCorasickMatcher.compile(List.of("ab", "ab")));
+  }
+
+  private static void assertMatchesOracle(List<String> patterns, String text) {
+    List<String> expected = new ArrayList<>();
+    for (int end = 1; end <= text.length(); end++) {
+      for (int pattern = 0; pattern < patterns.size(); pattern++) {
+        int start = end - patterns.get(pattern).length();
+        if (start >= 0 && text.indexOf(patterns.get(pattern), start) == start) {
+          expected.add(pattern + "@" + end);
+        }
+      }
+    }
+    List<String> actual = new ArrayList<>();
+    AhoCorasickMatcher.compile(patterns)
+        .match(text, (pattern, end) -> actual.add(pattern + "@" + end));
+    actual.sort(null);
+    expected.sort(null);
+    assertEquals(expected, actual, patterns + " in " + text);
+  }
+
+  private static String randomText(Random random, String alphabet, int length) {
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,196 @@
+package com.vitrina.servicecommon;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+// Understands the small subset of expressions the workers and the merge service issue: SET/REMOVE
+// of (nested) paths, if_not_exists(path, :zero) + :n increments, and AND-joined comparisons
+// against placeholders or attribute_exists(path).
+public class InMemoryDynamoDb implements DynamoDbClient {
+  private final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+
+  public void put(Map<String, AttributeValue> item) {
+    items.put(item.get("requestId").s(), new HashMap<>(item));
+  }
+
+  public Map<String, AttributeValue> get(String requestId) {
+    return items.get(requestId);
+  }
+
+  @Override
+  public GetItemResponse getItem(GetItemRequest request) {
+    Map<String, AttributeValue> item = items.get(request.key().get("requestId").s());
+    return GetItemResponse.builder().item(item == null ? Map.of() : new HashMap<>(item)).build();
+  }
+
+  @Override
+  public synchronized UpdateItemResponse updateItem(UpdateItemRequest request) {
+    String requestId = request.key().get("requestId").s();
+    Map<String, AttributeValue> item = items.computeIfAbsent(requestId, id -> {
+      Map<String, AttributeValue> created = new HashMap<>();
+      created.put("requestId", AttributeValue.builder().s(id).build());
+      return created;
+    });
+    Map<String, String> names = orEmpty(request.expressionAttributeNames());
+    Map<String, AttributeValue> values = orEmpty(request.expressionAttributeValues());
+    if (request.conditionExpression() != null
+        && !matches(item, request.conditionExpression(), names, values)) {
+      throw ConditionalCheckFailedException.builder().message("condition failed").build();
+    }
+    String expression = request.updateExpression().trim();
+    int remove = expression.indexOf("REMOVE ");
+    String set = remove < 0 ? expression : expression.substring(0, remove).trim();
+    if (set.startsWith("SET ")) {
+      for (String assignment : set.substring(4).split(",(?![^(]*\\))")) {
+        String[] sides = assignment.split("=");
+        List<String> path = path(sides[0], names);
+        Map<String, AttributeValue> parent = parent(item, path, true);
+        String name = path.get(path.size() - 1);
+        parent.put(name, evaluate(sides[1].trim(), parent.get(name), values));
+      }
+    }
+    if (remove >= 0) {
+      for (String target : expression.substring(remove + 7).split(",")) {
+        List<String> path = path(target, names);
+        Map<String, AttributeValue> parent = parent(item, path, false);
+        if (parent != null) {
+          parent.remove(path.get(path.size() - 1));
+        }
+      }
+    }
+    return request.returnValues() == ReturnValue.ALL_NEW
+        ? UpdateItemResponse.builder().attributes(new HashMap<>(item)).build()
+        : UpdateItemResponse.builder().build();
+  }
+
+  private AttributeValue evaluate(String operand,
+      AttributeValue current,
+      Map<String, AttributeValue> values) {
+    if (!operand.startsWith("if_not_exists(")) {
+      return values.get(operand);
+    }
+    String[] arguments = operand.substring(operand.indexOf('(') + 1).split("[,)+]");
+    BigDecimal base = current == null
+        ? new BigDecimal(values.get(arguments[1].trim()).n()) : new BigDecimal(current.n());
+    BigDecimal increment = new BigDecimal(values.get(arguments[arguments.length - 1].trim()).n());
+    return AttributeValue.builder().n(base.add(increment).toPlainString()).build();
+  }
+
+  @Override
+  public QueryResponse query(QueryRequest request) {
+    Map<String, String> names = orEmpty(request.expressionAttributeNames());
+    Map<String, AttributeValue> values = orEmpty(request.expressionAttributeValues());
+    List<Map<String, AttributeValue>> found = new ArrayList<>();
+    for (Map<String, AttributeValue> item : items.values()) {
+      if (matches(item, request.keyConditionExpression(), names, values)) {
+        found.add(new HashMap<>(item));
+      }
+    }
+    if (request.limit() != null && found.size() > request.limit()) {
+      found = found.subList(0, request.limit());
+    }
+    return QueryResponse.builder().items(found).count(found.size()).build();
+  }
+
+  private boolean matches(Map<String, AttributeValue> item,
+      String condition,
+      Map<String, String> names,
+      Map<String, AttributeValue> values) {
+    for (String clause : condition.split(" AND ")) {
+      clause = clause.trim();
+      if (clause.startsWith("attribute_exists(")) {
+        List<String> path = path(clause.substring(17, clause.length() - 1), names);
+        Map<String, AttributeValue> parent = parent(item, path, false);
+        if (parent == null || !parent.containsKey(path.get(path.size() - 1))) {
+          return false;
+        }
+        continue;
+      }
+      String[] parts = clause.split(" ");
+      List<String> path = path(parts[0], names);
+      Map<String, AttributeValue> parent = parent(item, path, false);
+      AttributeValue actual = parent == null ? null : parent.get(path.get(path.size() - 1));
+      AttributeValue expected = values.get(parts[2]);
+      if (actual == null || expected == null) {
+        return false;
+      }
+      int comparison = compare(actual, expected);
+      boolean holds = switch (parts[1]) {
+        case "=" -> comparison == 0;
+        case "<>" -> comparison != 0;
+        case "<" -> comparison < 0;
+        case "<=" -> comparison <= 0;
+        case ">" -> comparison > 0;
+        case ">=" -> comparison >= 0;
+        default -> throw new UnsupportedOperationException(clause);
+      };
+      if (!holds) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int compare(AttributeValue actual, AttributeValue expected) {
+    if (expected.n() != null) {
+      return actual.n() == null
+          ? 1 : new BigDecimal(actual.n()).compareTo(new BigDecimal(expected.n()));
+    }
+    return actual.s() == null ? 1 : actual.s().compareTo(expected.s());
+  }
+
+  private List<String> path(String expression, Map<String, String> names) {
+    List<String> path = new ArrayList<>();
+    for (String segment : expression.trim().split("\\.")) {
+      path.add(names.getOrDefault(segment, segment));
+    }
+    return path;
+  }
+
+  private Map<String, AttributeValue> parent(Map<String, AttributeValue> item,
+      List<String> path,
+      boolean create) {
+    Map<String, AttributeValue> current = item;
+    for (int i = 0; i < path.size() - 1; i++) {
+      AttributeValue next = current.get(path.get(i));
+      if (next == null || next.m() == null) {
+        if (!create) {
+          return null;
+        }
+        next = AttributeValue.builder().m(new HashMap<>()).build();
+        current.put(path.get(i), next);
+      }
+      Map<String, AttributeValue> child = new HashMap<>(next.m());
+      current.put(path.get(i), AttributeValue.builder().m(child).build());
+      current = child;
+    }
+    return current;
+  }
+
+  private static <K, V> Map<K, V> orEmpty(Map<K, V> map) {
+    return map == null ? Map.of() : map;
+  }
+
+  @Override
+  public String serviceName() {
+    return "dynamodb";
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,123 @@
+package com.vitrina.servicecommon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+public class InMemoryS3 implements S3Client {
+  private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+  private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+  private final AtomicInteger uploadIds = new AtomicInteger();
+  public final AtomicInteger getRequests = new AtomicInteger();
+  public final List<String> abortedUploads = new CopyOnWriteArrayList<>();
+  public volatile int failPartNumber = -1;
+
+  public void put(String bucket, String key, String body) {
+    objects.put(bucket + "/" + key, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public byte[] get(String bucket, String key) {
+    return objects.get(bucket + "/" + key);
+  }
+
+  @Override
+  public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+    getRequests.incrementAndGet();
+    byte[] body = objects.get(request.bucket() + "/" + request.key());
+    if (body == null) {
+      throw (S3Exception) S3Exception.builder().statusCode(404).message("missing").build();
+    }
+    return new ResponseInputStream<>(
+        GetObjectResponse.builder().contentLength((long) body.length).build(),
+        AbortableInputStream.create(new ByteArrayInputStream(body)));
+  }
+
+  @Override
+  public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+    try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+      objects.put(request.bucket() + "/" + request.key(), in.readAllBytes());
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return PutObjectResponse.builder().build();
+  }
+
+  @Override
+  public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+    String uploadId = "upload-" + uploadIds.incrementAndGet();
+    uploads.put(uploadId, new ConcurrentHashMap<>());
+    return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+  }
+
+  @Override
+  public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+    if (request.partNumber() == failPartNumber) {
+      throw (S3Exception) S3Exception.builder().statusCode(500).message("part failed").build();
+    }
+    try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+      uploads.get(request.uploadId()).put(request.partNumber(), in.readAllBytes());
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+  }
+
+  @Override
+  public CompleteMultipartUploadResponse completeMultipartUpload(
+      CompleteMultipartUploadRequest request) {
+    Map<Integer, byte[]> parts = new TreeMap<>(uploads.remove(request.uploadId()));
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (CompletedPart part : request.multipartUpload().parts()) {
+      body.writeBytes(parts.get(part.partNumber()));
+    }
+    objects.put(request.bucket() + "/" + request.key(), body.toByteArray());
+    return CompleteMultipartUploadResponse.builder().build();
+  }
+
+  @Override
+  public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+    uploads.remove(request.uploadId());
+    abortedUploads.add(request.uploadId());
+    return AbortMultipartUploadResponse.builder().build();
+  }
+
+  public int openUploads() {
+    return uploads.size();
+  }
+
+  @Override
+  public String serviceName() {
+    return "s3";
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,35 @@
+package com.vitrina.servicecommon;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+public class RecordingSqs implements SqsClient {
+  public final List<String> deletedReceipts = new CopyOnWriteArrayList<>();
+  public final List<SendMessageRequest> sent = new CopyOnWriteArrayList<>();
+
+  @Override
+  public DeleteMessageResponse deleteMessage(DeleteMessageRequest request) {
+    deletedReceipts.add(request.receiptHandle());
+    return DeleteMessageResponse.builder().build();
+  }
+
+  @Override
+  public SendMessageResponse sendMessage(SendMessageRequest request) {
+    sent.add(request);
+    return SendMessageResponse.builder().messageId("msg-" + sent.size()).build();
+  }
+
+  @Override
+  public String serviceName() {
+    return "sqs";
+  }
+
+  @Override
+  public void close() {
+  }
+}
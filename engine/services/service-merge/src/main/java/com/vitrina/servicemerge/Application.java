@@ -3,7 +3,7 @@ package com.vitrina.servicemerge;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = {"com.vitrina.servicemerge", "com.vitrina.servicecommon"})
 public class Application {
   public static void main(String[] args) {
     SpringApplication.run(Application.class, args);
@@ -1,6 +1,7 @@
 package com.vitrina.servicemerge;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -28,4 +29,10 @@ public class AwsClientConfig {
   public ObjectMapper objectMapper() {
     return new ObjectMapper();
   }
+
+  @Bean
+  public ServiceBucketRegistry serviceBucketRegistry(
+      @Value("${app.s3.service-buckets}") String serviceBuckets) {
+    return ServiceBucketRegistry.parse(serviceBuckets);
+  }
 }
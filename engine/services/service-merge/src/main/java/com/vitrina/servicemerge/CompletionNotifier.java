@@ -0,0 +1,243 @@
+package com.vitrina.servicemerge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CompletionNotifier implements DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(CompletionNotifier.class);
+  private static final String SIGNATURE_HEADER = "X-Vitrina-Signature";
+  private static final String TIMESTAMP_HEADER = "X-Vitrina-Timestamp";
+  private static final String EVENT_ID_HEADER = "X-Vitrina-Event-Id";
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+  private static final long MAX_BACKOFF_MILLIS = 60_000;
+  private static final int DELIVERY_THREADS = 2;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicInteger threadIndex = new AtomicInteger();
+  private final ObjectMapper objectMapper;
+  private final HttpClient httpClient;
+  private final ScheduledExecutorService executor;
+  private final byte[] signingSecret;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final int queueCapacity;
+  private final Duration requestTimeout;
+  private final boolean allowPrivateTargets;
+
+  // Callback URLs are client supplied and posted to from inside the VPC, so only https targets
+  // that resolve to public addresses are called. allowPrivateTargets lifts both restrictions for
+  // local stacks and tests.
+  public CompletionNotifier(ObjectMapper objectMapper,
+      @Value("${app.callback.signing-secret}") String signingSecret,
+      @Value("${app.callback.max-attempts}") int maxAttempts,
+      @Value("${app.callback.initial-backoff-millis}") long initialBackoffMillis,
+      @Value("${app.callback.queue-capacity}") int queueCapacity,
+      @Value("${app.callback.timeout-millis}") long timeoutMillis,
+      @Value("${app.callback.allow-private-targets}") boolean allowPrivateTargets) {
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    if (maxAttempts < 1) {
+      throw new IllegalStateException("Callback max attempts must be at least 1");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalStateException("Callback queue capacity must be at least 1");
+    }
+    this.signingSecret = signingSecret == null || signingSecret.isBlank()
+        ? null
+        : signingSecret.getBytes(StandardCharsets.UTF_8);
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+    this.queueCapacity = queueCapacity;
+    this.requestTimeout = Duration.ofMillis(timeoutMillis);
+    this.allowPrivateTargets = allowPrivateTargets;
+    // A redirect could point anywhere, including back into the VPC; 3xx counts as a failure.
+    this.httpClient = HttpClient.newBuilder()
+        .connectTimeout(requestTimeout)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+    this.executor = Executors.newScheduledThreadPool(DELIVERY_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "completion-notifier-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (this.signingSecret == null) {
+      logger.warn("Callback signing secret is not configured. Completion callbacks are disabled.");
+    }
+  }
+
+  public boolean notifyCompletion(String requestId, String callbackUrl, String mergedKey) {
+    if (callbackUrl == null || callbackUrl.isBlank() || signingSecret == null) {
+      return false;
+    }
+    if (pending.incrementAndGet() > queueCapacity) {
+      pending.decrementAndGet();
+      logger.warn("Callback queue is full. Dropping completion event. requestId={}", requestId);
+      return false;
+    }
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("event", "orchestration.completed");
+    event.put("requestId", requestId);
+    event.put("finalStatus", "DONE");
+    event.put("mergedKey", mergedKey);
+    event.put("completedAt", Instant.now().toString());
+
+    try {
+      URI callbackUri = URI.create(callbackUrl);
+      if (!allowPrivateTargets && !"https".equalsIgnoreCase(callbackUri.getScheme())) {
+        pending.decrementAndGet();
+        logger.warn("Callback URL is not https. Dropping completion event. requestId={}",
+            requestId);
+        return false;
+      }
+      Delivery delivery = new Delivery(
+          requestId, callbackUri, objectMapper.writeValueAsBytes(event));
+      executor.execute(() -> deliver(delivery, 1));
+      return true;
+    } catch (Exception ex) {
+      pending.decrementAndGet();
+      logger.warn("Failed to enqueue completion event. requestId={}", requestId, ex);
+      return false;
+    }
+  }
+
+  int pendingDeliveries() {
+    return pending.get();
+  }
+
+  private void deliver(Delivery delivery, int attempt) {
+    boolean delivered = false;
+    try {
+      // Resolved on every attempt, so a host re-pointed at an internal address is caught too.
+      if (!allowPrivateTargets && !resolvesToPublicAddresses(delivery.callbackUri.getHost())) {
+        pending.decrementAndGet();
+        logger.error("Callback host resolves to a non-public address. Giving up. requestId={}, "
+            + "host={}", delivery.requestId, delivery.callbackUri.getHost());
+        return;
+      }
+      String timestamp = Long.toString(Instant.now().getEpochSecond());
+      HttpRequest request = HttpRequest.newBuilder(delivery.callbackUri)
+          .timeout(requestTimeout)
+          .header("Content-Type", "application/json")
+          .header(EVENT_ID_HEADER, delivery.requestId)
+          .header(TIMESTAMP_HEADER, timestamp)
+          .header(SIGNATURE_HEADER, "sha256=" + sign(timestamp, delivery.body))
+          .POST(HttpRequest.BodyPublishers.ofByteArray(delivery.body))
+          .build();
+      HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+      delivered = response.statusCode() >= 200 && response.statusCode() < 300;
+      if (!delivered) {
+        logger.warn("Callback rejected. requestId={}, status={}, attempt={}",
+            delivery.requestId, response.statusCode(), attempt);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      pending.decrementAndGet();
+      return;
+    } catch (Exception ex) {
+      logger.warn("Callback delivery failed. requestId={}, attempt={}", delivery.requestId, attempt, ex);
+    }
+
+    if (delivered) {
+      pending.decrementAndGet();
+      logger.info("Callback delivered. requestId={}, attempt={}", delivery.requestId, attempt);
+      return;
+    }
+    if (attempt >= maxAttempts) {
+      pending.decrementAndGet();
+      logger.error("Giving up on callback. requestId={}, attempts={}", delivery.requestId, attempt);
+      return;
+    }
+    try {
+      executor.schedule(() -> deliver(delivery, attempt + 1),
+          backoffMillis(attempt), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ex) {
+      pending.decrementAndGet();
+    }
+  }
+
+  private static boolean resolvesToPublicAddresses(String host) throws Exception {
+    if (host == null || host.toLowerCase(Locale.ROOT).endsWith("localhost")) {
+      return false;
+    }
+    for (InetAddress address : InetAddress.getAllByName(host)) {
+      if (!isPublic(address)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Loopback, link-local (169.254/16, including the instance metadata endpoint), site-local
+  // (10/8, 172.16/12, 192.168/16), wildcard and multicast addresses, plus 0/8, 100.64/10,
+  // 240/4 and IPv6 unique-local fc00::/7. IPv4-mapped IPv6 addresses arrive as IPv4.
+  static boolean isPublic(InetAddress address) {
+    if (address.isLoopbackAddress() || address.isLinkLocalAddress()
+        || address.isSiteLocalAddress() || address.isAnyLocalAddress()
+        || address.isMulticastAddress()) {
+      return false;
+    }
+    byte[] bytes = address.getAddress();
+    if (bytes.length == 4) {
+      int first = bytes[0] & 0xff;
+      int second = bytes[1] & 0xff;
+      return first != 0 && first < 240 && !(first == 100 && second >= 64 && second < 128);
+    }
+    return (bytes[0] & 0xfe) != 0xfc;
+  }
+
+  private long backoffMillis(int attempt) {
+    long delay = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt - 1, 20));
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  private String sign(String timestamp, byte[] body) throws Exception {
+    Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+    mac.init(new SecretKeySpec(signingSecret, HMAC_ALGORITHM));
+    mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+    mac.update((byte) '.');
+    return HexFormat.of().formatHex(mac.doFinal(body));
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdown();
+  }
+
+  private static final class Delivery {
+    private final String requestId;
+    private final URI callbackUri;
+    private final byte[] body;
+
+    private Delivery(String requestId, URI callbackUri, byte[] body) {
+      this.requestId = requestId;
+      this.callbackUri = callbackUri;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.vitrina.servicemerge;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Walks the sortedFindings copy of one service output, holding only the current finding in
+// memory. Each entry pairs a finding with the fingerprint it is ordered by.
+public class FindingCursor implements Closeable {
+  private final String service;
+  private final String source;
+  private final ObjectMapper objectMapper;
+  private final JsonParser parser;
+  private ObjectNode current;
+  private String fingerprint;
+
+  public FindingCursor(String service, String source, InputStream in, ObjectMapper objectMapper)
+      throws IOException {
+    this.service = service;
+    this.source = source;
+    this.objectMapper = objectMapper;
+    this.parser = objectMapper.getFactory().createParser(in);
+    if (positionAtFindings()) {
+      advance();
+    }
+  }
+
+  public String service() {
+    return service;
+  }
+
+  public boolean hasCurrent() {
+    return current != null;
+  }
+
+  public ObjectNode current() {
+    return current;
+  }
+
+  public String fingerprint() {
+    return fingerprint;
+  }
+
+  public void advance() throws IOException {
+    String previous = fingerprint;
+    current = null;
+    fingerprint = null;
+    JsonToken token = parser.nextToken();
+    if (token == JsonToken.END_ARRAY) {
+      return;
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new IllegalStateException("Sorted finding is not a JSON object: " + source);
+    }
+    JsonNode entry = objectMapper.readTree(parser);
+    JsonNode value = entry.get("fingerprint");
+    if (value == null || !value.isValueNode() || value.isNull()) {
+      throw new IllegalStateException("Finding without fingerprint in " + source);
+    }
+    if (!(entry.get("finding") instanceof ObjectNode finding)) {
+      throw new IllegalStateException("Finding is not a JSON object: " + source);
+    }
+    current = finding;
+    fingerprint = value.asText();
+    if (previous != null && previous.compareTo(fingerprint) > 0) {
+      throw new IllegalStateException("Findings are not sorted by fingerprint in " + source);
+    }
+  }
+
+  private boolean positionAtFindings() throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IllegalStateException("Service output is not a JSON object: " + source);
+    }
+    return seekField(SqsMergeWorker.SORTED_FINDINGS, JsonToken.START_ARRAY);
+  }
+
+  private boolean seekField(String name, JsonToken expected) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (name.equals(field)) {
+        if (value != expected) {
+          throw new IllegalStateException("Unexpected " + name + " in " + source);
+        }
+        return true;
+      }
+      parser.skipChildren();
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+}
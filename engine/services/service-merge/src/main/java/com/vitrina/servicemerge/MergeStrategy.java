@@ -0,0 +1,21 @@
+package com.vitrina.servicemerge;
+
+import java.util.Locale;
+
+public enum MergeStrategy {
+  // Each service output becomes one element of the merged items array.
+  CONCAT,
+  // Findings from all outputs are merged in fingerprint order and duplicates collapsed.
+  DEDUPE;
+
+  public static MergeStrategy parse(String value) {
+    if (value == null || value.isBlank()) {
+      return CONCAT;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalStateException("Unknown merge strategy: " + value);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.vitrina.servicemerge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+// Counts gathered while the merged document is written, so /status can report them
+// from the record without downloading findings. Type and severity values come from service
+// output, so they are truncated, only the first MAX_TRACKED_KEYS distinct values are counted
+// individually, and the record keeps the MAX_STORED_KEYS largest with the rest under "other".
+public class MergeSummary {
+  static final String OTHER_KEY = "other";
+  static final int MAX_KEY_LENGTH = 64;
+  static final int MAX_TRACKED_KEYS = 1000;
+  static final int MAX_STORED_KEYS = 20;
+
+  private final Map<String, Long> findingsByService = new TreeMap<>();
+  private final Map<String, Long> findingsByType = new TreeMap<>();
+  private final Map<String, Long> findingsBySeverity = new TreeMap<>();
+  private long items;
+  private long findings;
+  private long totalBytes;
+
+  public void recordItem() {
+    items++;
+  }
+
+  public void recordFinding(Collection<String> services) {
+    findings++;
+    for (String service : services) {
+      findingsByService.merge(service, 1L, Long::sum);
+    }
+  }
+
+  public void recordType(String type) {
+    recordCapped(findingsByType, type);
+  }
+
+  public void recordSeverity(String severity) {
+    recordCapped(findingsBySeverity, severity);
+  }
+
+  public void setTotalBytes(long totalBytes) {
+    this.totalBytes = totalBytes;
+  }
+
+  public AttributeValue toAttributeValue() {
+    Map<String, AttributeValue> summary = new HashMap<>();
+    summary.put("items", number(items));
+    summary.put("findings", number(findings));
+    summary.put("totalBytes", number(totalBytes));
+    summary.put("byService", counts(findingsByService));
+    summary.put("byType", counts(topCounts(findingsByType)));
+    summary.put("bySeverity", counts(topCounts(findingsBySeverity)));
+    return AttributeValue.builder().m(summary).build();
+  }
+
+  private static void recordCapped(Map<String, Long> counts, String value) {
+    String key = value.length() > MAX_KEY_LENGTH ? value.substring(0, MAX_KEY_LENGTH) : value;
+    if (counts.size() >= MAX_TRACKED_KEYS && !counts.containsKey(key)) {
+      key = OTHER_KEY;
+    }
+    counts.merge(key, 1L, Long::sum);
+  }
+
+  private static Map<String, Long> topCounts(Map<String, Long> counts) {
+    if (counts.size() <= MAX_STORED_KEYS) {
+      return counts;
+    }
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+    Map<String, Long> top = new TreeMap<>();
+    long other = 0;
+    for (Map.Entry<String, Long> entry : entries) {
+      if (top.size() < MAX_STORED_KEYS - 1 && !entry.getKey().equals(OTHER_KEY)) {
+        top.put(entry.getKey(), entry.getValue());
+      } else {
+        other += entry.getValue();
+      }
+    }
+    top.put(OTHER_KEY, other);
+    return top;
+  }
+
+  private static AttributeValue counts(Map<String, Long> counts) {
+    Map<String, AttributeValue> values = new HashMap<>();
+    counts.forEach((key, count) -> values.put(key, number(count)));
+    return AttributeValue.builder().m(values).build();
+  }
+
+  private static AttributeValue number(long value) {
+    return AttributeValue.builder().n(Long.toString(value)).build();
+  }
+}
@@ -0,0 +1,63 @@
+package com.vitrina.servicemerge;
+
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+// Worker-wide budget of part-size buffers shared by every upload, so the merge's part memory is
+// bounded by partSize * maxBuffers however many merges run at once. Buffers are allocated on
+// first use and then recycled.
+public class PartBufferPool {
+  private final int partSize;
+  private final int maxBuffers;
+  private final Semaphore permits;
+  private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+  public PartBufferPool(int partSize, int maxBuffers) {
+    if (partSize < 1 || maxBuffers < 1) {
+      throw new IllegalStateException("Part size and buffer count must be positive");
+    }
+    this.partSize = partSize;
+    this.maxBuffers = maxBuffers;
+    this.permits = new Semaphore(maxBuffers);
+  }
+
+  public int partSize() {
+    return partSize;
+  }
+
+  public int maxBuffers() {
+    return maxBuffers;
+  }
+
+  // Callers must not hold another buffer while blocking here, or uploads can wait on each other.
+  public byte[] acquire() throws InterruptedIOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a part buffer");
+    }
+    return take();
+  }
+
+  // Returns null when the budget is exhausted.
+  public byte[] tryAcquire() {
+    return permits.tryAcquire() ? take() : null;
+  }
+
+  public void release(byte[] buffer) {
+    free.add(buffer);
+    permits.release();
+  }
+
+  int available() {
+    return permits.availablePermits();
+  }
+
+  private byte[] take() {
+    byte[] buffer = free.poll();
+    return buffer == null ? new byte[partSize] : buffer;
+  }
+}
@@ -0,0 +1,45 @@
+package com.vitrina.servicemerge;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ServiceBucketRegistry {
+  private final Map<String, String> buckets;
+
+  public ServiceBucketRegistry(Map<String, String> buckets) {
+    if (buckets == null || buckets.isEmpty()) {
+      throw new IllegalStateException("At least one service bucket is required");
+    }
+    this.buckets = Map.copyOf(buckets);
+  }
+
+  public static ServiceBucketRegistry parse(String spec) {
+    Map<String, String> buckets = new TreeMap<>();
+    if (spec != null) {
+      for (String entry : spec.split(",")) {
+        int separator = entry.indexOf('=');
+        if (separator <= 0) {
+          continue;
+        }
+        String service = entry.substring(0, separator).trim();
+        String bucket = entry.substring(separator + 1).trim();
+        if (!service.isEmpty() && !bucket.isEmpty()) {
+          buckets.put(service, bucket);
+        }
+      }
+    }
+    return new ServiceBucketRegistry(buckets);
+  }
+
+  public String bucketFor(String service) {
+    String bucket = buckets.get(service);
+    if (bucket == null) {
+      throw new IllegalStateException("No bucket registered for service " + service);
+    }
+    return bucket;
+  }
+
+  public Map<String, String> asMap() {
+    return buckets;
+  }
+}
@@ -1,21 +1,52 @@
 package com.vitrina.servicemerge;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.vitrina.common.ResourceUsage;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.common.TraceContext;
+import com.vitrina.servicecommon.LatencyMetrics;
+import com.vitrina.servicecommon.ShedWorkMetrics;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
@@ -23,10 +54,12 @@ import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 
 @Component
@@ -34,64 +67,105 @@ public class SqsMergeWorker implements CommandLineRunner, DisposableBean {
   private static final Logger logger = LoggerFactory.getLogger(SqsMergeWorker.class);
   private static final int WAIT_TIME_SECONDS = 20;
   private static final long IDLE_SLEEP_MILLIS = 40_000;
+  private static final int MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+  private static final int PREFETCH_BYTES = 1024 * 1024;
+  static final String SORTED_FINDINGS = "sortedFindings";
+  private static final String SHARD_OUTPUTS_ATTRIBUTE = "shardOutputs";
+  private static final String SENT_TIMESTAMP = "SentTimestamp";
+  private static final String RECEIVE_COUNT = "ApproximateReceiveCount";
 
   private final AtomicBoolean running = new AtomicBoolean(true);
   private final SqsClient sqsClient;
   private final S3Client s3Client;
   private final DynamoDbClient dynamoDbClient;
   private final ObjectMapper objectMapper;
+  private final CompletionNotifier completionNotifier;
+  private final ShedWorkMetrics shedWorkMetrics;
+  private final LatencyMetrics latencyMetrics;
+  private final SpanExporter spanExporter;
+  private final ServiceBucketRegistry bucketRegistry;
+  private final ExecutorService messageExecutor;
+  private final ExecutorService uploadExecutor;
+  private final ExecutorService prefetchExecutor;
+  private final PartBufferPool bufferPool;
   private final String queueUrl;
-  private final String serviceABucket;
-  private final String serviceBBucket;
   private final String orchestratedBucket;
   private final String tableName;
+  private final int uploadConcurrency;
+  private final MergeStrategy strategy;
 
   public SqsMergeWorker(SqsClient sqsClient,
       S3Client s3Client,
       DynamoDbClient dynamoDbClient,
       ObjectMapper objectMapper,
+      CompletionNotifier completionNotifier,
+      ShedWorkMetrics shedWorkMetrics,
+      LatencyMetrics latencyMetrics,
+      SpanExporter spanExporter,
+      ServiceBucketRegistry bucketRegistry,
       @Value("${app.sqs.queue-url}") String queueUrl,
-      @Value("${app.s3.service-a-bucket}") String serviceABucket,
-      @Value("${app.s3.service-b-bucket}") String serviceBBucket,
       @Value("${app.s3.orchestrated-bucket}") String orchestratedBucket,
-      @Value("${app.dynamo.table-name}") String tableName) {
+      @Value("${app.dynamo.table-name}") String tableName,
+      @Value("${app.merge.batch-concurrency}") int batchConcurrency,
+      @Value("${app.merge.upload-concurrency}") int uploadConcurrency,
+      @Value("${app.merge.part-size-bytes}") int partSizeBytes,
+      @Value("${app.merge.buffer-pool-bytes}") long bufferPoolBytes,
+      @Value("${app.merge.strategy}") String strategy) {
     this.sqsClient = Objects.requireNonNull(sqsClient, "sqsClient");
     this.s3Client = Objects.requireNonNull(s3Client, "s3Client");
     this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
     this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    this.completionNotifier = Objects.requireNonNull(completionNotifier, "completionNotifier");
+    this.shedWorkMetrics = Objects.requireNonNull(shedWorkMetrics, "shedWorkMetrics");
+    this.latencyMetrics = Objects.requireNonNull(latencyMetrics, "latencyMetrics");
+    this.spanExporter = Objects.requireNonNull(spanExporter, "spanExporter");
+    this.bucketRegistry = Objects.requireNonNull(bucketRegistry, "bucketRegistry");
     if (queueUrl == null || queueUrl.isBlank()) {
       throw new IllegalStateException("SQS queue URL is required");
     }
-    if (serviceABucket == null || serviceABucket.isBlank()) {
-      throw new IllegalStateException("Service A bucket is required");
-    }
-    if (serviceBBucket == null || serviceBBucket.isBlank()) {
-      throw new IllegalStateException("Service B bucket is required");
-    }
     if (orchestratedBucket == null || orchestratedBucket.isBlank()) {
       throw new IllegalStateException("Orchestrated bucket is required");
     }
     if (tableName == null || tableName.isBlank()) {
       throw new IllegalStateException("DynamoDB table name is required");
     }
+    if (batchConcurrency < 1 || uploadConcurrency < 1) {
+      throw new IllegalStateException("Merge concurrency must be at least 1");
+    }
+    if (partSizeBytes < MIN_PART_SIZE_BYTES) {
+      throw new IllegalStateException("Merge part size must be at least " + MIN_PART_SIZE_BYTES);
+    }
+    if (bufferPoolBytes < partSizeBytes) {
+      throw new IllegalStateException("Merge buffer pool must hold at least one part");
+    }
     this.queueUrl = queueUrl;
-    this.serviceABucket = serviceABucket;
-    this.serviceBBucket = serviceBBucket;
     this.orchestratedBucket = orchestratedBucket;
     this.tableName = tableName;
+    this.uploadConcurrency = uploadConcurrency;
+    this.strategy = MergeStrategy.parse(strategy);
+    this.messageExecutor = Executors.newFixedThreadPool(batchConcurrency);
+    this.uploadExecutor = Executors.newFixedThreadPool(batchConcurrency * uploadConcurrency);
+    this.prefetchExecutor = Executors.newFixedThreadPool(batchConcurrency);
+    // One pool for every concurrent merge: part memory stays within bufferPoolBytes, and a merge
+    // that finds it drained uploads its parts inline instead of waiting for another one.
+    this.bufferPool = new PartBufferPool(partSizeBytes,
+        (int) Math.min(Integer.MAX_VALUE, bufferPoolBytes / partSizeBytes));
   }
 
   @Override
   public void run(String... args) {
-    logger.info("Started merge worker. queueUrl={}, orchestratedBucket={}", queueUrl, orchestratedBucket);
+    logger.info("Started merge worker. queueUrl={}, orchestratedBucket={}, services={}, "
+        + "strategy={}", queueUrl, orchestratedBucket, bucketRegistry.asMap().keySet(), strategy);
     pollLoop();
   }
 
   private void pollLoop() {
     ReceiveMessageRequest request = ReceiveMessageRequest.builder()
         .queueUrl(queueUrl)
-        .maxNumberOfMessages(5)
+        .maxNumberOfMessages(10)
         .waitTimeSeconds(WAIT_TIME_SECONDS)
+        .messageAttributeNames(TraceContext.MESSAGE_ATTRIBUTE)
+        .attributeNamesWithStrings(SENT_TIMESTAMP, RECEIVE_COUNT)
         .build();
 
     while (running.get()) {
@@ -101,9 +175,7 @@ public class SqsMergeWorker implements CommandLineRunner, DisposableBean {
           sleepQuietly(IDLE_SLEEP_MILLIS);
           continue;
         }
-        for (Message message : messages) {
-          handleMessage(message);
-        }
+        processBatch(messages);
       } catch (Exception ex) {
         logger.error("Failed to poll SQS", ex);
         sleepQuietly(5000);
@@ -111,60 +183,203 @@ public class SqsMergeWorker implements CommandLineRunner, DisposableBean {
     }
   }
 
-  private void handleMessage(Message message) {
+  // Triggers for the same requestId are merged once per batch; their duplicates share the outcome.
+  void processBatch(List<Message> messages) {
+    Map<String, List<Message>> triggers = new LinkedHashMap<>();
+    for (Message message : messages) {
+      try {
+        triggers.computeIfAbsent(readRequestId(message), id -> new ArrayList<>()).add(message);
+      } catch (Exception ex) {
+        logger.error("Failed to read merge trigger. messageId={}", message.messageId(), ex);
+      }
+    }
+    if (triggers.size() < messages.size()) {
+      logger.info("Coalesced merge triggers. messages={}, requests={}",
+          messages.size(), triggers.size());
+    }
+
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    for (Map.Entry<String, List<Message>> entry : triggers.entrySet()) {
+      pending.add(CompletableFuture.runAsync(
+          () -> handleTriggers(entry.getKey(), entry.getValue()), messageExecutor));
+    }
+    // Failures are logged per request and left on the queue for redelivery.
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+        .exceptionally(ex -> null)
+        .join();
+  }
+
+  private String readRequestId(Message message) throws IOException {
+    Map<String, Object> payload = objectMapper.readValue(message.body(), new TypeReference<>() {});
+    String requestId = Objects.toString(payload.get("requestId"), "").trim();
+    if (requestId.isEmpty()) {
+      throw new IllegalArgumentException("requestId is required in payload");
+    }
+    return requestId;
+  }
+
+  // Coalesced triggers share one merge span, parented to the first trigger's worker span.
+  private void handleTriggers(String requestId, List<Message> messages) {
+    long startedAt = System.currentTimeMillis();
+    ResourceUsage usage = new ResourceUsage();
+    TraceContext parent = TraceContext.parse(traceparentOf(messages.get(0)));
+    TraceContext span = parent == null ? TraceContext.newTrace() : parent.newSpan();
+    Map<String, Object> spanAttributes = new LinkedHashMap<>();
+    spanAttributes.put("requestId", requestId);
+    spanAttributes.put("messaging.batch.message_count", messages.size());
+    for (Message message : messages) {
+      usage.add(ResourceUsage.SQS_RECEIVES, 1);
+      usage.add(ResourceUsage.REDELIVERIES, isRedelivery(message) ? 1 : 0);
+      Long dwellMillis = queueDwellMillis(message, startedAt);
+      if (dwellMillis != null) {
+        latencyMetrics.recordQueueDwell(requestId, span.getTraceId(), dwellMillis);
+        spanAttributes.putIfAbsent("messaging.dwell_ms", dwellMillis);
+      }
+    }
     try {
-      Map<String, Object> payload = objectMapper.readValue(
-          message.body(), new TypeReference<>() {});
-      String requestId = Objects.toString(payload.get("requestId"), "").trim();
-      if (requestId.isEmpty()) {
-        throw new IllegalArgumentException("requestId is required in payload");
+      Map<String, AttributeValue> record = readRecord(requestId);
+      usage.add(ResourceUsage.DYNAMODB_READS, 1);
+      if ("DONE".equals(readString(record.get("finalStatus")))) {
+        logger.info("Merge already done. Acknowledging triggers. requestId={}, messages={}",
+            requestId, messages.size());
+        deleteMessages(messages);
+        spanAttributes.put("outcome", "already-done");
+        exportSpan(span, parent, startedAt, spanAttributes);
+        return;
+      }
+      // Only the last service's MERGING transition (or the sweeper) triggers a real merge, so an
+      // early trigger is acknowledged before any output is read.
+      String finalStatus = readString(record.get("finalStatus"));
+      if (!"MERGING".equals(finalStatus)) {
+        logger.info("Record is not MERGING. Acknowledging triggers. requestId={}, status={}, "
+            + "messages={}", requestId, finalStatus, messages.size());
+        deleteMessages(messages);
+        spanAttributes.put("outcome", "not-merging");
+        exportSpan(span, parent, startedAt, spanAttributes);
+        return;
+      }
+
+      Instant deadline = readDeadline(requestId, readString(record.get("deadline")));
+      if (deadline != null && Instant.now().isAfter(deadline)) {
+        markExpired(requestId);
+        usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+        deleteMessages(messages);
+        shedWorkMetrics.recordShed(requestId, "deadline");
+        logger.info("Dropped merge past its deadline. requestId={}, deadline={}",
+            requestId, deadline);
+        spanAttributes.put("outcome", "expired");
+        exportSpan(span, parent, startedAt, spanAttributes);
+        return;
       }
 
-      Map<String, String> outputs = readOutputs(requestId);
-      String serviceAKey = outputs.get("serviceA");
-      String serviceBKey = outputs.get("serviceB");
-      if (serviceAKey == null || serviceAKey.isBlank()) {
-        throw new IllegalStateException("Missing output key for serviceA");
+      Map<String, List<String>> outputs = readOutputs(record);
+      if (outputs.isEmpty()) {
+        throw new IllegalStateException("No service outputs recorded");
       }
-      if (serviceBKey == null || serviceBKey.isBlank()) {
-        throw new IllegalStateException("Missing output key for serviceB");
+
+      String mergedKey = requestId + ".json";
+      MergeSummary summary = new MergeSummary();
+      try (StreamingUpload upload = new StreamingUpload(s3Client, uploadExecutor, bufferPool,
+          orchestratedBucket, mergedKey, "application/json", uploadConcurrency)) {
+        writeMergedDocument(requestId, outputs, upload, summary, usage);
+        upload.complete();
+        summary.setTotalBytes(upload.size());
+        usage.add(ResourceUsage.S3_BYTES_WRITTEN, upload.size());
+        spanAttributes.put("merge.total_bytes", upload.size());
       }
 
-      Map<String, Object> serviceAOutput = readOutput(serviceABucket, serviceAKey);
-      Map<String, Object> serviceBOutput = readOutput(serviceBBucket, serviceBKey);
+      boolean merged = updateFinalStatus(requestId, mergedKey, summary);
+      usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+      if (merged) {
+        Long endToEndMillis = millisSince(readString(record.get("createdAt")));
+        if (endToEndMillis != null) {
+          latencyMetrics.recordEndToEnd(requestId, span.getTraceId(), endToEndMillis);
+          spanAttributes.put("pipeline.end_to_end_ms", endToEndMillis);
+        }
+        completionNotifier.notifyCompletion(
+            requestId, readString(record.get("callbackUrl")), mergedKey);
+      }
 
-      List<Object> items = new ArrayList<>();
-      items.add(serviceAOutput);
-      items.add(serviceBOutput);
+      deleteMessages(messages);
+      spanAttributes.put("outcome", "merged");
+      exportSpan(span, parent, startedAt, spanAttributes);
 
-      Map<String, Object> merged = new LinkedHashMap<>();
-      merged.put("requestId", requestId);
-      merged.put("mergedAt", Instant.now().toString());
-      merged.put("items", items);
+      logger.info("Merged findings stored. requestId={}, key={}", requestId, mergedKey);
+    } catch (Exception ex) {
+      spanAttributes.put("outcome", "error");
+      spanAttributes.put("error.type", ex.getClass().getName());
+      exportSpan(span, parent, startedAt, spanAttributes);
+      logger.error("Failed to merge findings. requestId={}, messageId={}",
+          requestId, messages.get(0).messageId(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      recordUsage(requestId, usage);
+    }
+  }
 
-      String mergedKey = requestId + ".json";
-      s3Client.putObject(PutObjectRequest.builder()
-              .bucket(orchestratedBucket)
-              .key(mergedKey)
-              .contentType("application/json")
-              .build(),
-          RequestBody.fromBytes(objectMapper.writeValueAsBytes(merged)));
+  // Failed attempts are recorded too; their cost shows up again as a redelivery.
+  private void recordUsage(String requestId, ResourceUsage usage) {
+    usage.stopCpuClock();
+    usage.add(ResourceUsage.DYNAMODB_WRITES, 1);
+    try {
+      dynamoDbClient.updateItem(
+          usage.toUpdateRequest(tableName, requestId, ResourceUsage.MERGE_STAGE));
+    } catch (Exception ex) {
+      // Records created before resource accounting have no resources map to add to.
+      logger.warn("Failed to record resource usage. requestId={}", requestId, ex);
+    }
+  }
+
+  private boolean isRedelivery(Message message) {
+    Map<String, String> attributes = message.attributesAsStrings();
+    String receiveCount = attributes == null ? null : attributes.get(RECEIVE_COUNT);
+    return receiveCount != null && !receiveCount.equals("1");
+  }
 
-      updateFinalStatus(requestId, mergedKey);
+  private String traceparentOf(Message message) {
+    Map<String, MessageAttributeValue> attributes = message.messageAttributes();
+    MessageAttributeValue value =
+        attributes == null ? null : attributes.get(TraceContext.MESSAGE_ATTRIBUTE);
+    return value == null ? null : value.stringValue();
+  }
+
+  private Long queueDwellMillis(Message message, long receivedAt) {
+    Map<String, String> attributes = message.attributesAsStrings();
+    String sentTimestamp = attributes == null ? null : attributes.get(SENT_TIMESTAMP);
+    try {
+      return sentTimestamp == null ? null : receivedAt - Long.parseLong(sentTimestamp);
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
 
+  private Long millisSince(String instant) {
+    if (instant == null) {
+      return null;
+    }
+    try {
+      return System.currentTimeMillis() - Instant.parse(instant).toEpochMilli();
+    } catch (DateTimeParseException ex) {
+      return null;
+    }
+  }
+
+  private void exportSpan(TraceContext span, TraceContext parent, long startedAt,
+      Map<String, Object> attributes) {
+    spanExporter.export("merge", span, parent == null ? null : parent.getSpanId(), startedAt,
+        System.currentTimeMillis(), attributes);
+  }
+
+  private void deleteMessages(List<Message> messages) {
+    for (Message message : messages) {
       sqsClient.deleteMessage(DeleteMessageRequest.builder()
           .queueUrl(queueUrl)
           .receiptHandle(message.receiptHandle())
           .build());
-
-      logger.info("Merged findings stored. requestId={}, key={}", requestId, mergedKey);
-    } catch (Exception ex) {
-      logger.error("Failed to merge findings. messageId={}", message.messageId(), ex);
-      throw new RuntimeException(ex);
     }
   }
 
-  private Map<String, String> readOutputs(String requestId) {
+  private Map<String, AttributeValue> readRecord(String requestId) {
     GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
         .tableName(tableName)
         .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
@@ -174,48 +389,435 @@ public class SqsMergeWorker implements CommandLineRunner, DisposableBean {
     if (response.item() == null || response.item().isEmpty()) {
       throw new IllegalStateException("requestId not found");
     }
+    return response.item();
+  }
 
-    AttributeValue outputsAttr = response.item().get("outputs");
+  // Sharded services record one output per shard under "<service>/<shard>" instead of a single
+  // entry in outputs; they are gathered back in shard order.
+  private Map<String, List<String>> readOutputs(Map<String, AttributeValue> record) {
+    AttributeValue outputsAttr = record.get("outputs");
     if (outputsAttr == null || outputsAttr.m() == null) {
       throw new IllegalStateException("outputs not found in DynamoDB");
     }
-    Map<String, String> outputs = new LinkedHashMap<>();
+    Map<String, List<String>> outputs = new LinkedHashMap<>();
     for (Map.Entry<String, AttributeValue> entry : outputsAttr.m().entrySet()) {
-      outputs.put(entry.getKey(), entry.getValue().s());
+      outputs.put(entry.getKey(), List.of(Objects.toString(entry.getValue().s(), "")));
+    }
+    AttributeValue shardOutputsAttr = record.get(SHARD_OUTPUTS_ATTRIBUTE);
+    if (shardOutputsAttr == null || shardOutputsAttr.m() == null
+        || shardOutputsAttr.m().isEmpty()) {
+      return outputs;
+    }
+    AttributeValue shardCountAttr = record.get("shardCount");
+    int shardCount = shardCountAttr == null || shardCountAttr.n() == null
+        ? 0 : Integer.parseInt(shardCountAttr.n());
+    Map<String, String[]> shards = new TreeMap<>();
+    for (Map.Entry<String, AttributeValue> entry : shardOutputsAttr.m().entrySet()) {
+      int separator = entry.getKey().lastIndexOf('/');
+      int shard = separator < 0 ? -1 : Integer.parseInt(entry.getKey().substring(separator + 1));
+      if (shard < 0 || shard >= shardCount) {
+        throw new IllegalStateException("Unexpected shard output " + entry.getKey());
+      }
+      String service = entry.getKey().substring(0, separator);
+      shards.computeIfAbsent(service, name -> new String[shardCount])[shard] =
+          entry.getValue().s();
+    }
+    for (Map.Entry<String, String[]> entry : shards.entrySet()) {
+      outputs.put(entry.getKey(), Arrays.asList(entry.getValue()));
     }
     return outputs;
   }
 
-  private Map<String, Object> readOutput(String bucketName, String key) throws Exception {
-    byte[] data = s3Client.getObjectAsBytes(
-        software.amazon.awssdk.services.s3.model.GetObjectRequest.builder()
-            .bucket(bucketName)
-            .key(key)
-            .build())
-        .asByteArray();
-    return objectMapper.readValue(data, new TypeReference<>() {});
+  // Service outputs are copied token by token in service order, so each one is validated
+  // without building an object tree and only the current upload part is held in memory.
+  private void writeMergedDocument(String requestId,
+      Map<String, List<String>> outputs,
+      OutputStream target,
+      MergeSummary summary,
+      ResourceUsage usage) throws IOException {
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(target)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.writeStartObject();
+      generator.writeStringField("requestId", requestId);
+      generator.writeStringField("mergedAt", Instant.now().toString());
+      generator.writeArrayFieldStart("items");
+      Map<String, List<String>> sorted = new TreeMap<>(outputs);
+      for (Map.Entry<String, List<String>> entry : sorted.entrySet()) {
+        for (String key : entry.getValue()) {
+          if (key == null || key.isBlank()) {
+            throw new IllegalStateException("Missing output key for " + entry.getKey());
+          }
+        }
+      }
+      if (strategy == MergeStrategy.DEDUPE) {
+        writeDedupedFindings(sorted, generator, summary, usage);
+      } else {
+        copyOutputs(requestId, sorted, generator, summary, usage);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
   }
 
-  private void updateFinalStatus(String requestId, String mergedKey) {
+  // K-way merge over the sortedFindings copies; one finding per service output is held
+  // in memory. Duplicates keep the first service's copy and list every reporting service.
+  private void writeDedupedFindings(Map<String, List<String>> outputs,
+      JsonGenerator generator,
+      MergeSummary summary,
+      ResourceUsage usage) throws IOException {
+    List<FindingCursor> cursors = new ArrayList<>();
+    try {
+      for (Map.Entry<String, List<String>> entry : outputs.entrySet()) {
+        for (String key : entry.getValue()) {
+          GetObjectRequest request = GetObjectRequest.builder()
+              .bucket(bucketRegistry.bucketFor(entry.getKey()))
+              .key(key)
+              .build();
+          ResponseInputStream<GetObjectResponse> in = s3Client.getObject(request);
+          usage.add(ResourceUsage.S3_BYTES_READ, contentLength(in));
+          cursors.add(new FindingCursor(entry.getKey(), key, in, objectMapper));
+        }
+      }
+      PriorityQueue<FindingCursor> heads = new PriorityQueue<>(
+          Comparator.comparing(FindingCursor::fingerprint)
+              .thenComparingInt(cursors::indexOf));
+      for (FindingCursor cursor : cursors) {
+        if (cursor.hasCurrent()) {
+          heads.add(cursor);
+        }
+      }
+      while (!heads.isEmpty()) {
+        FindingCursor first = heads.poll();
+        String fingerprint = first.fingerprint();
+        ObjectNode finding = first.current();
+        Set<String> services = new LinkedHashSet<>();
+        services.add(first.service());
+        advance(first, heads);
+        while (!heads.isEmpty() && heads.peek().fingerprint().equals(fingerprint)) {
+          FindingCursor duplicate = heads.poll();
+          services.add(duplicate.service());
+          advance(duplicate, heads);
+        }
+        summary.recordItem();
+        summary.recordFinding(services);
+        recordScalar(finding.get("type"), summary::recordType);
+        recordScalar(finding.get("severity"), summary::recordSeverity);
+        ArrayNode serviceNames = finding.putArray("services");
+        services.forEach(serviceNames::add);
+        generator.writeTree(finding);
+      }
+    } finally {
+      for (FindingCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
+  private void advance(FindingCursor cursor, PriorityQueue<FindingCursor> heads)
+      throws IOException {
+    cursor.advance();
+    if (cursor.hasCurrent()) {
+      heads.add(cursor);
+    }
+  }
+
+  private void recordScalar(JsonNode value, Consumer<String> recorder) {
+    if (value != null && value.isValueNode() && !value.isNull()) {
+      recorder.accept(value.asText());
+    }
+  }
+
+  // Copies outputs in order while the next one is opened and its first PREFETCH_BYTES read on
+  // the prefetch pool, so S3 request latency overlaps the copy. The rest of each output streams
+  // as it is copied: a merge holds at most one prefetched head next to its upload parts. A
+  // sharded service's outputs are joined into one item, so items do not depend on shardCount.
+  private void copyOutputs(String requestId,
+      Map<String, List<String>> outputs,
+      JsonGenerator generator,
+      MergeSummary summary,
+      ResourceUsage usage) throws IOException {
+    List<String[]> sources = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : outputs.entrySet()) {
+      for (String key : entry.getValue()) {
+        sources.add(new String[] {entry.getKey(), key});
+      }
+    }
+    try (Prefetcher prefetcher = new Prefetcher(sources)) {
+      for (Map.Entry<String, List<String>> entry : outputs.entrySet()) {
+        if (entry.getValue().size() == 1) {
+          try (PrefetchedOutput output = prefetcher.next()) {
+            copyOutput(entry.getKey(), output, generator, summary, usage);
+          }
+        } else {
+          joinShards(requestId, entry.getKey(), entry.getValue().size(), prefetcher, generator,
+              summary, usage);
+        }
+      }
+    }
+  }
+
+  // Writes the item an unsharded worker would have: shard items are streamed into one
+  // payload.payload array in shard order, then the shards' findings, which are analyzer output
+  // and buffered until the items are written, then the remaining payload fields of shard 0.
+  private void joinShards(String requestId,
+      String service,
+      int shardCount,
+      Prefetcher prefetcher,
+      JsonGenerator generator,
+      MergeSummary summary,
+      ResourceUsage usage) throws IOException {
+    List<JsonNode> findings = new ArrayList<>();
+    Map<String, JsonNode> fields = new LinkedHashMap<>();
+    summary.recordItem();
+    generator.writeStartObject();
+    generator.writeStringField("requestId", requestId);
+    generator.writeObjectFieldStart("payload");
+    generator.writeArrayFieldStart("payload");
+    for (int shard = 0; shard < shardCount; shard++) {
+      try (PrefetchedOutput output = prefetcher.next();
+          JsonParser parser = objectMapper.getFactory().createParser(output.stream())) {
+        usage.add(ResourceUsage.S3_BYTES_READ, contentLength(output.in));
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+          throw new IllegalStateException("Service output is not a JSON object: " + output.key);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          JsonToken value = parser.nextToken();
+          if (!"payload".equals(field)) {
+            parser.skipChildren();
+          } else if (value != JsonToken.START_OBJECT) {
+            throw new IllegalStateException("Shard payload is not a JSON object: " + output.key);
+          } else {
+            copyShardPayload(output.key, parser, generator, findings, fields);
+          }
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+          throw new IllegalStateException("Malformed service output: " + output.key);
+        }
+      }
+    }
+    generator.writeEndArray();
+    if (!findings.isEmpty()) {
+      generator.writeArrayFieldStart("findings");
+      for (JsonNode finding : findings) {
+        summary.recordFinding(List.of(service));
+        recordScalar(finding.get("type"), summary::recordType);
+        recordScalar(finding.get("severity"), summary::recordSeverity);
+        generator.writeTree(finding);
+      }
+      generator.writeEndArray();
+    }
+    for (Map.Entry<String, JsonNode> field : fields.entrySet()) {
+      generator.writeFieldName(field.getKey());
+      generator.writeTree(field.getValue());
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  private void copyShardPayload(String key,
+      JsonParser parser,
+      JsonGenerator generator,
+      List<JsonNode> findings,
+      Map<String, JsonNode> fields) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("payload".equals(field) || "findings".equals(field)) {
+        if (value != JsonToken.START_ARRAY) {
+          throw new IllegalStateException("Shard " + field + " is not an array: " + key);
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if ("payload".equals(field)) {
+            generator.copyCurrentStructure(parser);
+          } else {
+            findings.add(objectMapper.readTree(parser));
+          }
+        }
+      } else {
+        JsonNode node = objectMapper.readTree(parser);
+        fields.putIfAbsent(field, node);
+      }
+    }
+  }
+
+  private CompletableFuture<PrefetchedOutput> prefetch(String service, String key) {
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucketRegistry.bucketFor(service))
+        .key(key)
+        .build();
+    return CompletableFuture.supplyAsync(() -> {
+      ResponseInputStream<GetObjectResponse> in = s3Client.getObject(request);
+      try {
+        return new PrefetchedOutput(key, in, in.readNBytes(PREFETCH_BYTES));
+      } catch (IOException ex) {
+        closeQuietly(in);
+        throw new UncheckedIOException(ex);
+      }
+    }, prefetchExecutor);
+  }
+
+  private static PrefetchedOutput await(CompletableFuture<PrefetchedOutput> future)
+      throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) ex.getCause()).getCause();
+      }
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException ignored) {
+      // Nothing left to read from it.
+    }
+  }
+
+  // Copies one output event by event, counting payload.findings entries and their scalar
+  // type/severity fields on the way through. The sortedFindings copy is only for DEDUPE.
+  private void copyOutput(String service,
+      PrefetchedOutput output,
+      JsonGenerator generator,
+      MergeSummary summary,
+      ResourceUsage usage) throws IOException {
+    String key = output.key;
+    try (JsonParser parser = objectMapper.getFactory().createParser(output.stream())) {
+      usage.add(ResourceUsage.S3_BYTES_READ, contentLength(output.in));
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalStateException("Service output is not a JSON object: " + key);
+      }
+      summary.recordItem();
+      generator.copyCurrentEvent(parser);
+      int depth = 1;
+      while (depth > 0) {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+          throw new IllegalStateException("Truncated service output: " + key);
+        }
+        if (depth == 1 && token == JsonToken.FIELD_NAME
+            && SORTED_FINDINGS.equals(parser.getCurrentName())) {
+          parser.nextToken();
+          parser.skipChildren();
+          continue;
+        }
+        generator.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+          depth++;
+          if (token == JsonToken.START_OBJECT && isFinding(parser.getParsingContext())) {
+            summary.recordFinding(List.of(service));
+          }
+        } else if (token.isStructEnd()) {
+          depth--;
+        } else if (token.isScalarValue() && token != JsonToken.VALUE_NULL
+            && isFinding(parser.getParsingContext())) {
+          String field = parser.getCurrentName();
+          if ("type".equals(field)) {
+            summary.recordType(parser.getText());
+          } else if ("severity".equals(field)) {
+            summary.recordSeverity(parser.getText());
+          }
+        }
+      }
+      if (parser.nextToken() != null) {
+        throw new IllegalStateException("Unexpected content after service output: " + key);
+      }
+    }
+  }
+
+  private long contentLength(ResponseInputStream<GetObjectResponse> in) {
+    Long length = in.response().contentLength();
+    return length == null ? 0 : length;
+  }
+
+  // True for the object context of an element of the output's top-level payload.findings.
+  private static boolean isFinding(JsonStreamContext context) {
+    JsonStreamContext findings = context.getParent();
+    if (findings == null || !findings.inArray()) {
+      return false;
+    }
+    JsonStreamContext payload = findings.getParent();
+    if (payload == null || !"findings".equals(payload.getCurrentName())) {
+      return false;
+    }
+    JsonStreamContext output = payload.getParent();
+    return output != null
+        && "payload".equals(output.getCurrentName())
+        && output.getParent() != null
+        && output.getParent().inRoot();
+  }
+
+  private String readString(AttributeValue attr) {
+    return attr == null ? null : attr.s();
+  }
+
+  private boolean updateFinalStatus(String requestId, String mergedKey, MergeSummary summary) {
     UpdateItemRequest request = UpdateItemRequest.builder()
         .tableName(tableName)
         .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
-        .updateExpression("SET #finalStatus = :done, #mergedKey = :mergedKey, #mergedAt = :mergedAt")
+        .updateExpression("SET #finalStatus = :done, #mergedKey = :mergedKey, "
+            + "#mergedAt = :mergedAt, #summary = :summary "
+            + "REMOVE #leasePartition, #leaseExpiresAt")
         .conditionExpression("#finalStatus = :merging")
         .expressionAttributeNames(Map.of(
             "#finalStatus", "finalStatus",
             "#mergedKey", "mergedKey",
-            "#mergedAt", "mergedAt"))
+            "#mergedAt", "mergedAt",
+            "#summary", "summary",
+            "#leasePartition", StaleMergeSweeper.LEASE_PARTITION_ATTRIBUTE,
+            "#leaseExpiresAt", StaleMergeSweeper.LEASE_EXPIRES_AT_ATTRIBUTE))
         .expressionAttributeValues(Map.of(
             ":done", AttributeValue.builder().s("DONE").build(),
             ":merging", AttributeValue.builder().s("MERGING").build(),
             ":mergedKey", AttributeValue.builder().s(mergedKey).build(),
-            ":mergedAt", AttributeValue.builder().s(Instant.now().toString()).build()))
+            ":mergedAt", AttributeValue.builder().s(Instant.now().toString()).build(),
+            ":summary", summary.toAttributeValue()))
         .build();
     try {
       dynamoDbClient.updateItem(request);
+      return true;
     } catch (ConditionalCheckFailedException ex) {
       logger.warn("Final status was not MERGING. requestId={}", requestId);
+      return false;
+    }
+  }
+
+  private Instant readDeadline(String requestId, String rawDeadline) {
+    if (rawDeadline == null || rawDeadline.isBlank()) {
+      return null;
+    }
+    try {
+      return Instant.parse(rawDeadline.trim());
+    } catch (DateTimeParseException ex) {
+      logger.warn("Ignoring invalid deadline. requestId={}, deadline={}", requestId, rawDeadline);
+      return null;
+    }
+  }
+
+  private void markExpired(String requestId) {
+    UpdateItemRequest request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .updateExpression("SET #finalStatus = :expired REMOVE #leasePartition, #leaseExpiresAt")
+        .conditionExpression("#finalStatus = :merging")
+        .expressionAttributeNames(Map.of(
+            "#finalStatus", "finalStatus",
+            "#leasePartition", StaleMergeSweeper.LEASE_PARTITION_ATTRIBUTE,
+            "#leaseExpiresAt", StaleMergeSweeper.LEASE_EXPIRES_AT_ATTRIBUTE))
+        .expressionAttributeValues(Map.of(
+            ":expired", AttributeValue.builder().s("EXPIRED").build(),
+            ":merging", AttributeValue.builder().s("MERGING").build()))
+        .build();
+    try {
+      dynamoDbClient.updateItem(request);
+    } catch (ConditionalCheckFailedException ex) {
+      logger.warn("Final status was not MERGING. Not marking expired. requestId={}", requestId);
     }
   }
 
@@ -230,5 +832,57 @@ public class SqsMergeWorker implements CommandLineRunner, DisposableBean {
   @Override
   public void destroy() {
     running.set(false);
+    messageExecutor.shutdown();
+    uploadExecutor.shutdown();
+    prefetchExecutor.shutdown();
+  }
+
+  // Hands out outputs in source order, starting the next prefetch as each one is taken.
+  private final class Prefetcher implements Closeable {
+    private final List<String[]> sources;
+    private int index;
+    private CompletableFuture<PrefetchedOutput> pending;
+
+    private Prefetcher(List<String[]> sources) {
+      this.sources = sources;
+      this.pending = sources.isEmpty() ? null : prefetch(sources.get(0)[0], sources.get(0)[1]);
+    }
+
+    private PrefetchedOutput next() throws IOException {
+      PrefetchedOutput current = await(pending);
+      index++;
+      pending = index < sources.size()
+          ? prefetch(sources.get(index)[0], sources.get(index)[1])
+          : null;
+      return current;
+    }
+
+    @Override
+    public void close() {
+      if (pending != null) {
+        pending.thenAccept(PrefetchedOutput::close);
+      }
+    }
+  }
+
+  private static final class PrefetchedOutput implements Closeable {
+    private final String key;
+    private final ResponseInputStream<GetObjectResponse> in;
+    private final byte[] head;
+
+    private PrefetchedOutput(String key, ResponseInputStream<GetObjectResponse> in, byte[] head) {
+      this.key = key;
+      this.in = in;
+      this.head = head;
+    }
+
+    private InputStream stream() {
+      return new SequenceInputStream(new ByteArrayInputStream(head), in);
+    }
+
+    @Override
+    public void close() {
+      closeQuietly(in);
+    }
   }
 }
@@ -0,0 +1,148 @@
+package com.vitrina.servicemerge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+// Re-enqueues merges whose MERGING lease expired, e.g. after a worker crash or a lost trigger.
+// Leases live in a sparse index that only holds records currently in MERGING.
+@Component
+public class StaleMergeSweeper implements InitializingBean, DisposableBean {
+  static final String LEASE_INDEX = "MergeLeaseIndex";
+  static final String LEASE_PARTITION_ATTRIBUTE = "mergeLeasePartition";
+  static final String LEASE_EXPIRES_AT_ATTRIBUTE = "mergeLeaseExpiresAt";
+  private static final Logger logger = LoggerFactory.getLogger(StaleMergeSweeper.class);
+
+  private final DynamoDbClient dynamoDbClient;
+  private final SqsClient sqsClient;
+  private final ObjectMapper objectMapper;
+  private final ScheduledExecutorService scheduler;
+  private final String queueUrl;
+  private final String tableName;
+  private final long leaseMillis;
+  private final long intervalSeconds;
+  private final int maxRequeuesPerSweep;
+
+  public StaleMergeSweeper(DynamoDbClient dynamoDbClient,
+      SqsClient sqsClient,
+      ObjectMapper objectMapper,
+      @Value("${app.sqs.queue-url}") String queueUrl,
+      @Value("${app.dynamo.table-name}") String tableName,
+      @Value("${app.merge.lease-seconds}") long leaseSeconds,
+      @Value("${app.merge.sweep-interval-seconds}") long intervalSeconds,
+      @Value("${app.merge.sweep-max-requeues}") int maxRequeuesPerSweep) {
+    this.dynamoDbClient = Objects.requireNonNull(dynamoDbClient, "dynamoDbClient");
+    this.sqsClient = Objects.requireNonNull(sqsClient, "sqsClient");
+    this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+    if (leaseSeconds < 1 || intervalSeconds < 1 || maxRequeuesPerSweep < 1) {
+      throw new IllegalStateException("Merge lease and sweep settings must be positive");
+    }
+    this.queueUrl = queueUrl;
+    this.tableName = tableName;
+    this.leaseMillis = leaseSeconds * 1000;
+    this.intervalSeconds = intervalSeconds;
+    this.maxRequeuesPerSweep = maxRequeuesPerSweep;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "stale-merge-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    scheduler.scheduleWithFixedDelay(this::sweepQuietly,
+        intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  // At most maxRequeuesPerSweep merges are re-enqueued per interval, so a mass expiry after an
+  // outage drains gradually instead of flooding the merge queue.
+  int sweep(long nowMillis) {
+    QueryResponse response = dynamoDbClient.query(QueryRequest.builder()
+        .tableName(tableName)
+        .indexName(LEASE_INDEX)
+        .keyConditionExpression("#leasePartition = :merging AND #leaseExpiresAt < :now")
+        .expressionAttributeNames(Map.of(
+            "#leasePartition", LEASE_PARTITION_ATTRIBUTE,
+            "#leaseExpiresAt", LEASE_EXPIRES_AT_ATTRIBUTE))
+        .expressionAttributeValues(Map.of(
+            ":merging", AttributeValue.builder().s("MERGING").build(),
+            ":now", AttributeValue.builder().n(Long.toString(nowMillis)).build()))
+        .limit(maxRequeuesPerSweep)
+        .build());
+
+    int requeued = 0;
+    for (Map<String, AttributeValue> item : response.items()) {
+      String requestId = item.get("requestId").s();
+      String expiredLease = item.get(LEASE_EXPIRES_AT_ATTRIBUTE).n();
+      if (!renewLease(requestId, expiredLease, nowMillis)) {
+        continue;
+      }
+      try {
+        sqsClient.sendMessage(SendMessageRequest.builder()
+            .queueUrl(queueUrl)
+            .messageBody(objectMapper.writeValueAsString(Map.of("requestId", requestId)))
+            .build());
+        requeued++;
+        logger.warn("Re-enqueued merge with expired lease. requestId={}", requestId);
+      } catch (Exception ex) {
+        // The renewed lease expires again and the next sweeps retry.
+        logger.error("Failed to re-enqueue merge. requestId={}", requestId, ex);
+      }
+    }
+    return requeued;
+  }
+
+  // Conditional on the lease we saw, so concurrent sweepers re-enqueue a record only once.
+  private boolean renewLease(String requestId, String expiredLease, long nowMillis) {
+    UpdateItemRequest request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of("requestId", AttributeValue.builder().s(requestId).build()))
+        .updateExpression("SET #leaseExpiresAt = :renewed")
+        .conditionExpression("#finalStatus = :merging AND #leaseExpiresAt = :expired")
+        .expressionAttributeNames(Map.of(
+            "#finalStatus", "finalStatus",
+            "#leaseExpiresAt", LEASE_EXPIRES_AT_ATTRIBUTE))
+        .expressionAttributeValues(Map.of(
+            ":merging", AttributeValue.builder().s("MERGING").build(),
+            ":expired", AttributeValue.builder().n(expiredLease).build(),
+            ":renewed", AttributeValue.builder().n(Long.toString(nowMillis + leaseMillis)).build()))
+        .build();
+    try {
+      dynamoDbClient.updateItem(request);
+      return true;
+    } catch (ConditionalCheckFailedException ex) {
+      return false;
+    }
+  }
+
+  private void sweepQuietly() {
+    try {
+      sweep(System.currentTimeMillis());
+    } catch (Exception ex) {
+      logger.error("Failed to sweep stale merges", ex);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    scheduler.shutdown();
+  }
+}
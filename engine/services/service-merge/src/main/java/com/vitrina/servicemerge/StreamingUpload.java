@@ -0,0 +1,280 @@
+package com.vitrina.servicemerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+// Buffers writes into parts and uploads up to maxInFlightParts of them in parallel. Writes start
+// in a small private buffer that grows on demand, so a document smaller than SMALL_BUFFER_BYTES
+// never touches the shared pool; larger ones move into pooled part buffers. When the pool has no
+// spare buffer the part is uploaded on the writing thread instead of waiting for one, so uploads
+// never block each other. Objects smaller than one part go out as a single PUT. Nothing becomes
+// visible until complete(); closing without completing aborts the upload.
+public class StreamingUpload extends OutputStream {
+  private static final Logger logger = LoggerFactory.getLogger(StreamingUpload.class);
+  private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
+  private static final int SMALL_BUFFER_BYTES = 256 * 1024;
+
+  private final S3Client s3Client;
+  private final Executor uploadExecutor;
+  private final String bucket;
+  private final String key;
+  private final String contentType;
+  private final PartBufferPool bufferPool;
+  private final int partSize;
+  private final int maxInFlightParts;
+  private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private byte[] buffer = new byte[0];
+  private boolean pooled;
+  private int position;
+  private long size;
+  private String uploadId;
+  private boolean finished;
+
+  public StreamingUpload(S3Client s3Client,
+      Executor uploadExecutor,
+      PartBufferPool bufferPool,
+      String bucket,
+      String key,
+      String contentType,
+      int maxInFlightParts) {
+    this.s3Client = Objects.requireNonNull(s3Client, "s3Client");
+    this.uploadExecutor = Objects.requireNonNull(uploadExecutor, "uploadExecutor");
+    this.bufferPool = Objects.requireNonNull(bufferPool, "bufferPool");
+    this.bucket = bucket;
+    this.key = key;
+    this.contentType = contentType;
+    if (maxInFlightParts < 1) {
+      throw new IllegalArgumentException("In-flight parts must be positive");
+    }
+    this.partSize = bufferPool.partSize();
+    this.maxInFlightParts = maxInFlightParts;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureWritable();
+    if (position == buffer.length) {
+      makeRoom();
+    }
+    buffer[position++] = (byte) b;
+    size++;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    ensureWritable();
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    while (length > 0) {
+      if (position == buffer.length) {
+        makeRoom();
+      }
+      int chunk = Math.min(length, buffer.length - position);
+      System.arraycopy(bytes, offset, buffer, position, chunk);
+      position += chunk;
+      size += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+
+  public void complete() throws IOException {
+    ensureWritable();
+    if (uploadId == null) {
+      byte[] body = buffer;
+      int length = position;
+      s3Client.putObject(PutObjectRequest.builder()
+              .bucket(bucket)
+              .key(key)
+              .contentType(contentType)
+              .build(),
+          RequestBody.fromContentProvider(
+              () -> new ByteArrayInputStream(body, 0, length), length, contentType));
+      finished = true;
+      releaseBuffer();
+      return;
+    }
+    if (position > 0) {
+      startPart();
+    } else {
+      releaseBuffer();
+    }
+    List<CompletedPart> completed = new ArrayList<>();
+    try {
+      for (CompletableFuture<CompletedPart> part : parts) {
+        completed.add(part.join());
+      }
+    } catch (CompletionException ex) {
+      throw new IOException("Failed to upload part of " + key, ex.getCause());
+    }
+    completed.sort(Comparator.comparing(CompletedPart::partNumber));
+    s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .uploadId(uploadId)
+        .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+        .build());
+    finished = true;
+  }
+
+  @Override
+  public void close() {
+    releaseBuffer();
+    if (finished) {
+      return;
+    }
+    finished = true;
+    if (uploadId == null) {
+      return;
+    }
+    // In-flight parts must settle before the abort, or S3 may keep their storage around.
+    CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+        .exceptionally(ex -> null)
+        .join();
+    try {
+      s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .uploadId(uploadId)
+          .build());
+    } catch (RuntimeException ex) {
+      logger.warn("Failed to abort multipart upload. key={}, uploadId={}", key, uploadId, ex);
+    }
+  }
+
+  private void makeRoom() throws IOException {
+    int smallLimit = Math.min(partSize, SMALL_BUFFER_BYTES);
+    if (buffer.length < smallLimit) {
+      buffer = Arrays.copyOf(buffer,
+          Math.min(smallLimit, Math.max(INITIAL_BUFFER_BYTES, buffer.length * 2)));
+    } else if (!pooled) {
+      // Only the small private buffer is held here, so blocking on the pool cannot deadlock.
+      byte[] partBuffer = bufferPool.acquire();
+      System.arraycopy(buffer, 0, partBuffer, 0, position);
+      buffer = partBuffer;
+      pooled = true;
+    } else {
+      submitPart();
+    }
+  }
+
+  private void submitPart() throws IOException {
+    byte[] next = inFlight.get() < maxInFlightParts ? bufferPool.tryAcquire() : null;
+    if (next == null) {
+      uploadPartInline();
+    } else {
+      startPart();
+      buffer = next;
+      pooled = true;
+    }
+    position = 0;
+    ensureWritable();
+  }
+
+  private void uploadPartInline() throws IOException {
+    createUploadIfNeeded();
+    int partNumber = parts.size() + 1;
+    try {
+      parts.add(CompletableFuture.completedFuture(uploadPart(partNumber, buffer, position)));
+    } catch (RuntimeException ex) {
+      throw new IOException("Failed to upload part of " + key, ex);
+    }
+  }
+
+  private void releaseBuffer() {
+    if (pooled) {
+      pooled = false;
+      bufferPool.release(buffer);
+    }
+    buffer = new byte[0];
+    position = 0;
+  }
+
+  private void createUploadIfNeeded() {
+    if (uploadId == null) {
+      uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .contentType(contentType)
+          .build()).uploadId();
+    }
+  }
+
+  // Hands the current pooled buffer to an async upload, which returns it to the pool.
+  private void startPart() {
+    createUploadIfNeeded();
+    int partNumber = parts.size() + 1;
+    byte[] body = buffer;
+    int length = position;
+    boolean release = pooled;
+    pooled = false;
+    buffer = new byte[0];
+    position = 0;
+    inFlight.incrementAndGet();
+    parts.add(CompletableFuture.supplyAsync(() -> {
+      try {
+        return uploadPart(partNumber, body, length);
+      } finally {
+        inFlight.decrementAndGet();
+        if (release) {
+          bufferPool.release(body);
+        }
+      }
+    }, uploadExecutor));
+  }
+
+  private CompletedPart uploadPart(int partNumber, byte[] body, int length) {
+    try {
+      String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+              .bucket(bucket)
+              .key(key)
+              .uploadId(uploadId)
+              .partNumber(partNumber)
+              .contentLength((long) length)
+              .build(),
+          RequestBody.fromContentProvider(
+              () -> new ByteArrayInputStream(body, 0, length), length, contentType)).eTag();
+      return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    } catch (RuntimeException ex) {
+      failure.compareAndSet(null, ex);
+      throw ex;
+    }
+  }
+
+  private void ensureWritable() throws IOException {
+    if (finished) {
+      throw new IOException("Upload already finished: " + key);
+    }
+    Throwable error = failure.get();
+    if (error != null) {
+      throw new IOException("Failed to upload part of " + key, error);
+    }
+  }
+}
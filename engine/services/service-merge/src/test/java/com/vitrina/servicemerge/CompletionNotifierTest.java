@@ -0,0 +1,131 @@
+package com.vitrina.servicemerge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompletionNotifierTest {
+  private static final String SECRET = "test-secret";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  private final List<String> signatures = new CopyOnWriteArrayList<>();
+  private final List<String> timestamps = new CopyOnWriteArrayList<>();
+  private final AtomicInteger failuresBeforeSuccess = new AtomicInteger();
+  private final CountDownLatch delivered = new CountDownLatch(1);
+  private HttpServer server;
+  private String callbackUrl;
+
+  @BeforeEach
+  void startReceiver() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/hook", exchange -> {
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      int status = failuresBeforeSuccess.getAndDecrement() > 0 ? 503 : 204;
+      if (status == 204) {
+        bodies.add(body);
+        signatures.add(exchange.getRequestHeaders().getFirst("X-Vitrina-Signature"));
+        timestamps.add(exchange.getRequestHeaders().getFirst("X-Vitrina-Timestamp"));
+      }
+      exchange.sendResponseHeaders(status, -1);
+      exchange.close();
+      if (status == 204) {
+        delivered.countDown();
+      }
+    });
+    server.start();
+    callbackUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+  }
+
+  @AfterEach
+  void stopReceiver() {
+    server.stop(0);
+  }
+
+  @Test
+  void deliversSignedEventAfterRetries() throws Exception {
+    failuresBeforeSuccess.set(2);
+    CompletionNotifier notifier =
+        new CompletionNotifier(objectMapper, SECRET, 5, 10, 10, 2000, true);
+
+    assertTrue(notifier.notifyCompletion("req-1", callbackUrl, "req-1.json"));
+    assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+    JsonNode event = objectMapper.readTree(bodies.get(0));
+    assertEquals("req-1", event.get("requestId").asText());
+    assertEquals("DONE", event.get("finalStatus").asText());
+    assertEquals("req-1.json", event.get("mergedKey").asText());
+    assertEquals("sha256=" + hmac(timestamps.get(0), bodies.get(0)), signatures.get(0));
+    notifier.destroy();
+  }
+
+  @Test
+  void dropsEventsWhenQueueIsFullOrUnsigned() throws Exception {
+    failuresBeforeSuccess.set(1_000);
+    CompletionNotifier notifier =
+        new CompletionNotifier(objectMapper, SECRET, 50, 1000, 1, 2000, true);
+    CompletionNotifier unsigned =
+        new CompletionNotifier(objectMapper, "", 5, 10, 10, 2000, true);
+
+    assertTrue(notifier.notifyCompletion("req-1", callbackUrl, "req-1.json"));
+    assertFalse(notifier.notifyCompletion("req-2", callbackUrl, "req-2.json"));
+    assertFalse(unsigned.notifyCompletion("req-3", callbackUrl, "req-3.json"));
+    assertFalse(notifier.notifyCompletion("req-4", null, "req-4.json"));
+    assertEquals(1, notifier.pendingDeliveries());
+    notifier.destroy();
+    unsigned.destroy();
+  }
+
+  @Test
+  void refusesPlainHttpAndPrivateTargets() throws Exception {
+    CompletionNotifier notifier =
+        new CompletionNotifier(objectMapper, SECRET, 3, 10, 10, 2000, false);
+    String httpsLoopback = callbackUrl.replace("http://", "https://");
+
+    assertFalse(notifier.notifyCompletion("req-1", callbackUrl, "req-1.json"));
+    assertTrue(notifier.notifyCompletion("req-2", httpsLoopback, "req-2.json"));
+    for (int i = 0; i < 100 && notifier.pendingDeliveries() > 0; i++) {
+      Thread.sleep(20);
+    }
+
+    assertEquals(0, notifier.pendingDeliveries());
+    assertEquals(0, bodies.size());
+    notifier.destroy();
+  }
+
+  @Test
+  void onlyPublicAddressesAreCallbackTargets() throws Exception {
+    for (String address : List.of("127.0.0.1", "169.254.169.254", "10.1.2.3", "172.16.0.1",
+        "192.168.1.1", "100.64.0.1", "0.0.0.0", "::1", "fd00::1", "fe80::1",
+        "::ffff:10.0.0.1")) {
+      assertFalse(CompletionNotifier.isPublic(InetAddress.getByName(address)), address);
+    }
+    assertTrue(CompletionNotifier.isPublic(InetAddress.getByName("93.184.216.34")));
+    assertTrue(CompletionNotifier.isPublic(InetAddress.getByName("2606:2800:220:1::1")));
+  }
+
+  private String hmac(String timestamp, byte[] body) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    mac.update((timestamp + ".").getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(mac.doFinal(body));
+  }
+}
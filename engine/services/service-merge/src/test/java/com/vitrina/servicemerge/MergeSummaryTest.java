@@ -0,0 +1,45 @@
+package com.vitrina.servicemerge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+class MergeSummaryTest {
+  @Test
+  void typeCountsKeepTheLargestValuesAndFoldTheRestIntoOther() {
+    MergeSummary summary = new MergeSummary();
+    for (int i = 0; i < 5; i++) {
+      summary.recordType("secret");
+    }
+    for (int i = 0; i < MergeSummary.MAX_TRACKED_KEYS + 500; i++) {
+      summary.recordType("type-" + i);
+    }
+
+    Map<String, AttributeValue> byType = summary.toAttributeValue().m().get("byType").m();
+
+    assertEquals(MergeSummary.MAX_STORED_KEYS, byType.size());
+    assertEquals("5", byType.get("secret").n());
+    long total = 0;
+    for (AttributeValue count : byType.values()) {
+      total += Long.parseLong(count.n());
+    }
+    assertEquals(5 + MergeSummary.MAX_TRACKED_KEYS + 500, total);
+  }
+
+  @Test
+  void longSeverityValuesAreTruncated() {
+    MergeSummary summary = new MergeSummary();
+    summary.recordSeverity("x".repeat(1000));
+    summary.recordSeverity("x".repeat(2000));
+
+    Map<String, AttributeValue> bySeverity =
+        summary.toAttributeValue().m().get("bySeverity").m();
+
+    assertEquals(1, bySeverity.size());
+    String key = bySeverity.keySet().iterator().next();
+    assertEquals(MergeSummary.MAX_KEY_LENGTH, key.length());
+    assertEquals("2", bySeverity.get(key).n());
+  }
+}
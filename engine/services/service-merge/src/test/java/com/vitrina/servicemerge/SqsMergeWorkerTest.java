@@ -0,0 +1,408 @@
+package com.vitrina.servicemerge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.servicecommon.InMemoryDynamoDb;
+import com.vitrina.servicecommon.InMemoryS3;
+import com.vitrina.servicecommon.LatencyMetrics;
+import com.vitrina.servicecommon.RecordingSqs;
+import com.vitrina.servicecommon.ShedWorkMetrics;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+class SqsMergeWorkerTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+  private final InMemoryS3 s3 = new InMemoryS3();
+  private final RecordingSqs sqs = new RecordingSqs();
+  private final CompletionNotifier notifier =
+      new CompletionNotifier(objectMapper, "", 1, 10, 10, 1000, false);
+  private final ShedWorkMetrics shedWorkMetrics = new ShedWorkMetrics(objectMapper, "merge");
+  private final LatencyMetrics latencyMetrics = new LatencyMetrics(objectMapper, "merge");
+  private final SqsMergeWorker worker = newWorker("concat");
+
+  @AfterEach
+  void shutdown() {
+    worker.destroy();
+    notifier.destroy();
+  }
+
+  private SqsMergeWorker newWorker(String strategy) {
+    return newWorker(strategy, new SpanExporter(objectMapper, "", "merge"));
+  }
+
+  private SqsMergeWorker newWorker(String strategy, SpanExporter spanExporter) {
+    return new SqsMergeWorker(sqs, s3, dynamoDb, objectMapper, notifier, shedWorkMetrics,
+        latencyMetrics, spanExporter,
+        ServiceBucketRegistry.parse("serviceA=bucket-a,serviceB=bucket-b"),
+        "merge-queue", "orchestrated", "status-table", 2, 2, 5 * 1024 * 1024,
+        10L * 1024 * 1024, strategy);
+  }
+
+  @Test
+  void splicedMergeMatchesObjectMapperOutput() throws Exception {
+    String outputA = "{\"requestId\":\"req-1\",\"payload\":{\"n\":1.5e3,\"list\":[1,true,null],"
+        + "\"text\":\"caf\\u00e9 \\\"quoted\\\"\",\"serviceName\":\"serviceA\"}}";
+    String outputB = "{ \"requestId\" : \"req-1\",\n \"payload\" : "
+        + "{ \"big\" : 12345678901234567890, \"serviceName\" : \"serviceB\" } }";
+    s3.put("bucket-a", "a.json", outputA);
+    s3.put("bucket-b", "b.json", outputB.replace(" } }",
+        " }, \"sortedFindings\" : [ { \"fingerprint\" : \"f\", \"finding\" : { } } ] }"));
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    byte[] merged = s3.get("orchestrated", "req-1.json");
+    JsonNode tree = objectMapper.readTree(merged);
+    Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("requestId", "req-1");
+    expected.put("mergedAt", tree.get("mergedAt").asText());
+    expected.put("items", List.of(
+        objectMapper.readValue(outputA, new TypeReference<Map<String, Object>>() {}),
+        objectMapper.readValue(outputB, new TypeReference<Map<String, Object>>() {})));
+    assertArrayEquals(objectMapper.writeValueAsBytes(expected), merged);
+    assertEquals("DONE", dynamoDb.get("req-1").get("finalStatus").s());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void invalidServiceOutputLeavesMessageForRedelivery() {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\"}");
+    s3.put("bucket-b", "b.json", "[1,2,3]");
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    assertNull(s3.get("orchestrated", "req-1.json"));
+    assertEquals("MERGING", dynamoDb.get("req-1").get("finalStatus").s());
+    assertEquals(List.of(), sqs.deletedReceipts);
+  }
+
+  @Test
+  void dedupeStrategyMergesFindingsByFingerprint() throws Exception {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\",\"payload\":{\"findings\":["
+        + "{\"rule\":\"z\"},{\"fingerprint\":\"a1\",\"rule\":\"x\"}],"
+        + "\"serviceName\":\"serviceA\"},\"sortedFindings\":["
+        + "{\"fingerprint\":\"a1\",\"finding\":{\"fingerprint\":\"a1\",\"rule\":\"x\"}},"
+        + "{\"fingerprint\":\"c3\",\"finding\":{\"rule\":\"z\"}}]}");
+    s3.put("bucket-b", "b.json", "{\"requestId\":\"req-1\",\"payload\":{"
+        + "\"serviceName\":\"serviceB\",\"findings\":[{\"fingerprint\":\"b2\"},"
+        + "{\"rule\":\"other\"}]},\"sortedFindings\":["
+        + "{\"fingerprint\":\"b2\",\"finding\":{\"fingerprint\":\"b2\"}},"
+        + "{\"fingerprint\":\"c3\",\"finding\":{\"rule\":\"other\"}}]}");
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+    SqsMergeWorker dedupeWorker = newWorker("dedupe");
+
+    try {
+      dedupeWorker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+    } finally {
+      dedupeWorker.destroy();
+    }
+
+    JsonNode items = objectMapper.readTree(s3.get("orchestrated", "req-1.json")).get("items");
+    assertEquals(objectMapper.readTree("["
+        + "{\"fingerprint\":\"a1\",\"rule\":\"x\",\"services\":[\"serviceA\"]},"
+        + "{\"fingerprint\":\"b2\",\"services\":[\"serviceB\"]},"
+        + "{\"rule\":\"z\",\"services\":[\"serviceA\",\"serviceB\"]}]"),
+        items);
+    Map<String, AttributeValue> summary = dynamoDb.get("req-1").get("summary").m();
+    assertEquals("3", summary.get("findings").n());
+    assertEquals("2", summary.get("byService").m().get("serviceB").n());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void summaryIsStoredWithTheRecord() {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\",\"payload\":{\"findings\":["
+        + "{\"fingerprint\":\"a1\",\"type\":\"secret\",\"severity\":\"high\"},"
+        + "{\"fingerprint\":\"b2\",\"type\":\"secret\",\"severity\":\"low\","
+        + "\"details\":{\"type\":\"nested\"}}],\"type\":\"ignored\"}}");
+    s3.put("bucket-b", "b.json", "{\"requestId\":\"req-1\",\"payload\":{\"findings\":["
+        + "{\"fingerprint\":\"c3\",\"type\":\"license\",\"severity\":\"high\"}]}}");
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    Map<String, AttributeValue> summary = dynamoDb.get("req-1").get("summary").m();
+    assertEquals("2", summary.get("items").n());
+    assertEquals("3", summary.get("findings").n());
+    assertEquals(String.valueOf(s3.get("orchestrated", "req-1.json").length),
+        summary.get("totalBytes").n());
+    assertEquals("2", summary.get("byService").m().get("serviceA").n());
+    assertEquals("1", summary.get("byService").m().get("serviceB").n());
+    assertEquals("2", summary.get("byType").m().get("secret").n());
+    assertEquals("1", summary.get("byType").m().get("license").n());
+    assertEquals(2, summary.get("byType").m().size());
+    assertEquals("2", summary.get("bySeverity").m().get("high").n());
+  }
+
+  @Test
+  void resourceUsageAccumulatesAcrossDeliveries() {
+    String outputA = "{\"requestId\":\"req-1\",\"payload\":{\"a\":1}}";
+    String outputB = "{\"requestId\":\"req-1\",\"payload\":{\"b\":2}}";
+    s3.put("bucket-a", "a.json", outputA);
+    s3.put("bucket-b", "b.json", outputB);
+    Map<String, AttributeValue> record =
+        mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json"));
+    record.put("resources", AttributeValue.builder().m(Map.of(
+        "merge", AttributeValue.builder().m(Map.of()).build())).build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+    worker.processBatch(List.of(Message.builder()
+        .messageId("id-receipt-2")
+        .receiptHandle("receipt-2")
+        .body("{\"requestId\":\"req-1\"}")
+        .attributesWithStrings(Map.of("ApproximateReceiveCount", "2"))
+        .build()));
+
+    Map<String, AttributeValue> usage =
+        dynamoDb.get("req-1").get("resources").m().get("merge").m();
+    assertEquals("2", usage.get("sqsReceives").n());
+    assertEquals("1", usage.get("redeliveries").n());
+    assertEquals("2", usage.get("dynamoDbReads").n());
+    assertEquals("3", usage.get("dynamoDbWrites").n());
+    assertEquals(String.valueOf(outputA.length() + outputB.length()),
+        usage.get("s3BytesRead").n());
+    assertEquals(String.valueOf(s3.get("orchestrated", "req-1.json").length),
+        usage.get("s3BytesWritten").n());
+  }
+
+  @Test
+  void shardOutputsAreJoinedIntoOneItemPerService() throws Exception {
+    s3.put("bucket-a", "a-0.json", "{\"requestId\":\"req-1\",\"payload\":{\"payload\":[1,2],"
+        + "\"findings\":[{\"type\":\"secret\"}],\"serviceName\":\"serviceA\"},"
+        + "\"sortedFindings\":[{\"fingerprint\":\"f\",\"finding\":{\"type\":\"secret\"}}]}");
+    s3.put("bucket-a", "a-1.json", "{\"requestId\":\"req-1\",\"payload\":{\"payload\":[3],"
+        + "\"findings\":[{\"type\":\"license\"}],\"serviceName\":\"serviceA\"}}");
+    s3.put("bucket-b", "b-0.json", "{\"requestId\":\"req-1\",\"payload\":{"
+        + "\"payload\":[{\"n\":1}],\"serviceName\":\"serviceB\"}}");
+    s3.put("bucket-b", "b-1.json",
+        "{\"requestId\":\"req-1\",\"payload\":{\"payload\":[],\"serviceName\":\"serviceB\"}}");
+    Map<String, AttributeValue> record = mergingRecord("req-1", Map.of());
+    record.put("shardCount", AttributeValue.builder().n("2").build());
+    record.put("shardOutputs", AttributeValue.builder().m(Map.of(
+        "serviceB/1", AttributeValue.builder().s("b-1.json").build(),
+        "serviceA/1", AttributeValue.builder().s("a-1.json").build(),
+        "serviceB/0", AttributeValue.builder().s("b-0.json").build(),
+        "serviceA/0", AttributeValue.builder().s("a-0.json").build())).build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    JsonNode items = objectMapper.readTree(s3.get("orchestrated", "req-1.json")).get("items");
+    assertEquals(objectMapper.readTree("["
+        + "{\"requestId\":\"req-1\",\"payload\":{\"payload\":[1,2,3],"
+        + "\"findings\":[{\"type\":\"secret\"},{\"type\":\"license\"}],"
+        + "\"serviceName\":\"serviceA\"}},"
+        + "{\"requestId\":\"req-1\",\"payload\":{\"payload\":[{\"n\":1}],"
+        + "\"serviceName\":\"serviceB\"}}]"), items);
+    Map<String, AttributeValue> summary = dynamoDb.get("req-1").get("summary").m();
+    assertEquals("2", summary.get("items").n());
+    assertEquals("2", summary.get("findings").n());
+    assertEquals("1", summary.get("byType").m().get("license").n());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void missingShardOutputLeavesMessageForRedelivery() {
+    s3.put("bucket-a", "a-0.json", "{\"requestId\":\"req-1\"}");
+    Map<String, AttributeValue> record = mergingRecord("req-1", Map.of());
+    record.put("shardCount", AttributeValue.builder().n("2").build());
+    record.put("shardOutputs", AttributeValue.builder().m(Map.of(
+        "serviceA/0", AttributeValue.builder().s("a-0.json").build())).build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    assertNull(s3.get("orchestrated", "req-1.json"));
+    assertEquals(List.of(), sqs.deletedReceipts);
+  }
+
+  @Test
+  void mergeSpanContinuesTheTriggerTrace() throws Exception {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\"}");
+    Map<String, AttributeValue> record = mergingRecord("req-1", Map.of("serviceA", "a.json"));
+    record.put("createdAt", AttributeValue.builder().s("2026-01-01T00:00:00Z").build());
+    dynamoDb.put(record);
+    Path traces = Files.createTempFile("traces", ".jsonl");
+    String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+    Message trigger = Message.builder()
+        .messageId("id-receipt-1")
+        .receiptHandle("receipt-1")
+        .body("{\"requestId\":\"req-1\"}")
+        .messageAttributes(Map.of("traceparent", MessageAttributeValue.builder()
+            .dataType("String")
+            .stringValue("00-" + traceId + "-00f067aa0ba902b7-01")
+            .build()))
+        .attributesAsStrings(Map.of("SentTimestamp",
+            Long.toString(System.currentTimeMillis() - 250)))
+        .build();
+    SqsMergeWorker tracingWorker = newWorker("concat", new SpanExporter(objectMapper,
+        traces.toString(), "merge"));
+
+    try {
+      tracingWorker.processBatch(List.of(trigger));
+    } finally {
+      tracingWorker.destroy();
+    }
+
+    List<String> lines = Files.readAllLines(traces);
+    Files.delete(traces);
+    assertEquals(1, lines.size());
+    JsonNode span = objectMapper.readTree(lines.get(0)).get("resourceSpans").get(0)
+        .get("scopeSpans").get(0).get("spans").get(0);
+    assertEquals(traceId, span.get("traceId").asText());
+    assertEquals("00f067aa0ba902b7", span.get("parentSpanId").asText());
+    Map<String, JsonNode> attributes = new LinkedHashMap<>();
+    span.get("attributes").forEach(kv -> attributes.put(kv.get("key").asText(), kv.get("value")));
+    assertEquals("merged", attributes.get("outcome").get("stringValue").asText());
+    assertTrue(attributes.get("messaging.dwell_ms").get("intValue").asLong() >= 250);
+    assertTrue(attributes.get("pipeline.end_to_end_ms").get("intValue").asLong() > 0);
+  }
+
+  @Test
+  void failedMergeExportsAnErrorSpan() throws Exception {
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "missing.json")));
+    Path traces = Files.createTempFile("traces", ".jsonl");
+    SqsMergeWorker tracingWorker = newWorker("concat", new SpanExporter(objectMapper,
+        traces.toString(), "merge"));
+
+    try {
+      tracingWorker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+    } finally {
+      tracingWorker.destroy();
+    }
+
+    List<String> lines = Files.readAllLines(traces);
+    Files.delete(traces);
+    assertEquals(1, lines.size());
+    JsonNode span = objectMapper.readTree(lines.get(0)).get("resourceSpans").get(0)
+        .get("scopeSpans").get(0).get("spans").get(0);
+    Map<String, JsonNode> attributes = new LinkedHashMap<>();
+    span.get("attributes").forEach(kv -> attributes.put(kv.get("key").asText(), kv.get("value")));
+    assertEquals("error", attributes.get("outcome").get("stringValue").asText());
+    assertTrue(attributes.containsKey("error.type"));
+    assertEquals(List.of(), sqs.deletedReceipts);
+  }
+
+  @Test
+  void dedupeStrategyRejectsUnsortedFindings() {
+    s3.put("bucket-a", "a.json", "{\"payload\":{},\"sortedFindings\":["
+        + "{\"fingerprint\":\"b\",\"finding\":{}},{\"fingerprint\":\"a\",\"finding\":{}}]}");
+    s3.put("bucket-b", "b.json", "{\"payload\":{}}");
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+    SqsMergeWorker dedupeWorker = newWorker("dedupe");
+
+    try {
+      dedupeWorker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+    } finally {
+      dedupeWorker.destroy();
+    }
+
+    assertNull(s3.get("orchestrated", "req-1.json"));
+    assertEquals(List.of(), sqs.deletedReceipts);
+  }
+
+  @Test
+  void duplicateTriggersInBatchAreMergedOnce() {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\"}");
+    s3.put("bucket-b", "b.json", "{\"requestId\":\"req-1\"}");
+    dynamoDb.put(mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json")));
+
+    worker.processBatch(List.of(
+        mergeMessage("req-1", "receipt-1"),
+        mergeMessage("req-1", "receipt-2"),
+        mergeMessage("req-1", "receipt-3")));
+
+    assertEquals(2, s3.getRequests.get());
+    assertEquals("DONE", dynamoDb.get("req-1").get("finalStatus").s());
+    assertEquals(Set.of("receipt-1", "receipt-2", "receipt-3"), Set.copyOf(sqs.deletedReceipts));
+  }
+
+  @Test
+  void completedRequestIsAcknowledgedWithoutMerging() {
+    Map<String, AttributeValue> record =
+        mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json"));
+    record.put("finalStatus", AttributeValue.builder().s("DONE").build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    assertEquals(0, s3.getRequests.get());
+    assertNull(s3.get("orchestrated", "req-1.json"));
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void earlyTriggerIsAcknowledgedWithoutMerging() {
+    s3.put("bucket-a", "a.json", "{\"requestId\":\"req-1\"}");
+    Map<String, AttributeValue> record = mergingRecord("req-1", Map.of("serviceA", "a.json"));
+    record.put("finalStatus", AttributeValue.builder().s("PENDING").build());
+    record.put("engine", AttributeValue.builder().m(Map.of(
+        "serviceA", AttributeValue.builder().s("DONE").build(),
+        "serviceB", AttributeValue.builder().s("IN_PROGRESS").build())).build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    assertEquals(0, s3.getRequests.get());
+    assertNull(s3.get("orchestrated", "req-1.json"));
+    assertEquals("PENDING", dynamoDb.get("req-1").get("finalStatus").s());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  @Test
+  void expiredRequestIsShedWithoutMerging() {
+    Map<String, AttributeValue> record =
+        mergingRecord("req-1", Map.of("serviceA", "a.json", "serviceB", "b.json"));
+    record.put("deadline", AttributeValue.builder().s("2020-01-01T00:00:00Z").build());
+    dynamoDb.put(record);
+
+    worker.processBatch(List.of(mergeMessage("req-1", "receipt-1")));
+
+    assertEquals(0, s3.getRequests.get());
+    assertEquals("EXPIRED", dynamoDb.get("req-1").get("finalStatus").s());
+    assertEquals(1, shedWorkMetrics.shedCount());
+    assertEquals(List.of("receipt-1"), sqs.deletedReceipts);
+  }
+
+  static Map<String, AttributeValue> mergingRecord(String requestId, Map<String, String> outputs) {
+    Map<String, AttributeValue> outputMap = new LinkedHashMap<>();
+    Map<String, AttributeValue> engineMap = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : outputs.entrySet()) {
+      outputMap.put(entry.getKey(), AttributeValue.builder().s(entry.getValue()).build());
+      engineMap.put(entry.getKey(), AttributeValue.builder().s("DONE").build());
+    }
+    Map<String, AttributeValue> item = new LinkedHashMap<>();
+    item.put("requestId", AttributeValue.builder().s(requestId).build());
+    item.put("finalStatus", AttributeValue.builder().s("MERGING").build());
+    item.put("engine", AttributeValue.builder().m(engineMap).build());
+    item.put("outputs", AttributeValue.builder().m(outputMap).build());
+    return item;
+  }
+
+  static Message mergeMessage(String requestId, String receiptHandle) {
+    return Message.builder()
+        .messageId("id-" + receiptHandle)
+        .receiptHandle(receiptHandle)
+        .body("{\"requestId\":\"" + requestId + "\"}")
+        .build();
+  }
+}
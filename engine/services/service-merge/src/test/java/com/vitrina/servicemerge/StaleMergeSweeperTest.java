@@ -0,0 +1,89 @@
+package com.vitrina.servicemerge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vitrina.common.SpanExporter;
+import com.vitrina.servicecommon.InMemoryDynamoDb;
+import com.vitrina.servicecommon.InMemoryS3;
+import com.vitrina.servicecommon.LatencyMetrics;
+import com.vitrina.servicecommon.RecordingSqs;
+import com.vitrina.servicecommon.ShedWorkMetrics;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+class StaleMergeSweeperTest {
+  private final InMemoryDynamoDb dynamoDb = new InMemoryDynamoDb();
+  private final RecordingSqs sqs = new RecordingSqs();
+  private final StaleMergeSweeper sweeper = new StaleMergeSweeper(
+      dynamoDb, sqs, new ObjectMapper(), "merge-queue", "status-table", 60, 60, 2);
+
+  @AfterEach
+  void shutdown() {
+    sweeper.destroy();
+  }
+
+  @Test
+  void expiredLeaseIsRenewedAndRequeuedOnce() {
+    dynamoDb.put(leasedRecord("req-1", 1_000));
+    dynamoDb.put(leasedRecord("req-2", 50_000));
+
+    assertEquals(1, sweeper.sweep(10_000));
+    assertEquals(0, sweeper.sweep(10_000));
+
+    assertEquals(1, sqs.sent.size());
+    assertEquals("{\"requestId\":\"req-1\"}", sqs.sent.get(0).messageBody());
+    assertEquals("70000", dynamoDb.get("req-1").get("mergeLeaseExpiresAt").n());
+  }
+
+  @Test
+  void sweepIsCappedPerRun() {
+    for (int i = 0; i < 5; i++) {
+      dynamoDb.put(leasedRecord("req-" + i, 1_000));
+    }
+
+    assertEquals(2, sweeper.sweep(10_000));
+    assertEquals(2, sweeper.sweep(10_000));
+    assertEquals(1, sweeper.sweep(10_000));
+    assertEquals(5, sqs.sent.size());
+  }
+
+  @Test
+  void completedMergeLeavesLeaseIndex() {
+    Map<String, AttributeValue> record = SqsMergeWorkerTest.mergingRecord(
+        "req-1", Map.of("serviceA", "a.json"));
+    record.putAll(leasedRecord("req-1", 1_000));
+    dynamoDb.put(record);
+    InMemoryS3 s3 = new InMemoryS3();
+    s3.put("bucket-a", "a.json", "{}");
+    ObjectMapper objectMapper = new ObjectMapper();
+    CompletionNotifier notifier = new CompletionNotifier(objectMapper, "", 1, 10, 10, 1000, false);
+    SqsMergeWorker worker = new SqsMergeWorker(sqs, s3, dynamoDb, objectMapper, notifier,
+        new ShedWorkMetrics(objectMapper, "merge"), new LatencyMetrics(objectMapper, "merge"),
+        new SpanExporter(objectMapper, "", "merge"),
+        ServiceBucketRegistry.parse("serviceA=bucket-a"),
+        "merge-queue", "orchestrated", "status-table", 1, 1, 5 * 1024 * 1024,
+        10L * 1024 * 1024, "concat");
+    try {
+      worker.processBatch(List.of(SqsMergeWorkerTest.mergeMessage("req-1", "receipt-1")));
+    } finally {
+      worker.destroy();
+      notifier.destroy();
+    }
+
+    assertNull(dynamoDb.get("req-1").get("mergeLeaseExpiresAt"));
+    assertEquals(0, sweeper.sweep(10_000));
+  }
+
+  private Map<String, AttributeValue> leasedRecord(String requestId, long leaseExpiresAt) {
+    return Map.of(
+        "requestId", AttributeValue.builder().s(requestId).build(),
+        "finalStatus", AttributeValue.builder().s("MERGING").build(),
+        "mergeLeasePartition", AttributeValue.builder().s("MERGING").build(),
+        "mergeLeaseExpiresAt", AttributeValue.builder().n(Long.toString(leaseExpiresAt)).build());
+  }
+}
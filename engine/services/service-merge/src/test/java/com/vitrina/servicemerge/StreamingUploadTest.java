@@ -0,0 +1,92 @@
+package com.vitrina.servicemerge;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.vitrina.servicecommon.InMemoryS3;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class StreamingUploadTest {
+  private final InMemoryS3 s3 = new InMemoryS3();
+  private final ExecutorService executor = Executors.newFixedThreadPool(3);
+  private PartBufferPool bufferPool = new PartBufferPool(64, 3);
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  @Test
+  void smallObjectIsUploadedWithSinglePut() throws IOException {
+    try (StreamingUpload upload = newUpload()) {
+      upload.write("{\"a\":1}".getBytes());
+      upload.complete();
+    }
+
+    assertArrayEquals("{\"a\":1}".getBytes(), s3.get("bucket", "key.json"));
+    assertEquals(0, s3.openUploads());
+  }
+
+  @Test
+  void largeObjectIsSplitIntoOrderedParts() throws IOException {
+    byte[] body = new byte[1000];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) ('a' + i % 26);
+    }
+
+    try (StreamingUpload upload = newUpload()) {
+      for (int offset = 0; offset < body.length; offset += 7) {
+        upload.write(body, offset, Math.min(7, body.length - offset));
+      }
+      upload.complete();
+    }
+
+    assertArrayEquals(body, s3.get("bucket", "key.json"));
+    assertEquals(0, s3.openUploads());
+    assertEquals(3, bufferPool.available());
+  }
+
+  @Test
+  void drainedPoolFallsBackToInlineParts() throws IOException {
+    bufferPool = new PartBufferPool(64, 1);
+    byte[] body = new byte[300];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) ('A' + i % 26);
+    }
+
+    try (StreamingUpload upload = newUpload()) {
+      upload.write(body);
+      upload.complete();
+    }
+
+    assertArrayEquals(body, s3.get("bucket", "key.json"));
+    assertEquals(1, bufferPool.available());
+  }
+
+  @Test
+  void failedPartAbortsUploadWithoutPublishing() {
+    s3.failPartNumber = 2;
+
+    assertThrows(IOException.class, () -> {
+      try (StreamingUpload upload = newUpload()) {
+        upload.write(new byte[500]);
+        upload.complete();
+      }
+    });
+
+    assertNull(s3.get("bucket", "key.json"));
+    assertEquals(List.of("upload-1"), s3.abortedUploads);
+  }
+
+  private StreamingUpload newUpload() {
+    return new StreamingUpload(
+        s3, executor, bufferPool, "bucket", "key.json", "application/json", 2);
+  }
+}